@@ -0,0 +1,68 @@
+package xdeolit00;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * measures Pacman's step logic on its own and the full engine tick as used by headless simulations.
+ * the game is restarted from the cached level whenever it ends.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameStepBenchmark {
+    private static final Direction[] TURNS = {Direction.UP, Direction.RIGHT, Direction.DOWN, Direction.LEFT};
+
+    @Param({"levels/level1.txt", "levels/level3.txt", "gen:501x501:1"})
+    public String levelId;
+
+    private Level level;
+    private GameState state;
+    private GameEngine engine;
+    private int step;
+
+    @Setup
+    public void setUp() throws IOException {
+        level = LevelLoader.load(levelId);
+        restart();
+    }
+
+    @Benchmark
+    public GameState stepPacman() {
+        if (state.getStatus() != GameState.Status.PLAYING) {
+            restart();
+        }
+        engine.steer(TURNS[(step++ >> 2) & 3]);
+        engine.stepPacman();
+        return state;
+    }
+
+    @Benchmark
+    public GameState tick() {
+        if (state.getStatus() != GameState.Status.PLAYING) {
+            restart();
+        }
+        engine.tick(TURNS[(step++ >> 7) & 3]);
+        return state;
+    }
+
+    private void restart() {
+        state = new GameState(level);
+        engine = new GameEngine(state);
+    }
+}
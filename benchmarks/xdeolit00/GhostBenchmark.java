@@ -0,0 +1,59 @@
+package xdeolit00;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * measures a single ghost step of the engine (flow field update and every ghost moving) for growing ghost counts.
+ * Pacman walks around between the steps so that the flow field has to be searched again,
+ * and the game is restarted from the cached level whenever the ghosts catch him.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GhostBenchmark {
+    @Param({"10", "100", "1000", "5000", "20000"})
+    public int ghosts;
+
+    private Level level;
+    private GameState state;
+    private GameEngine engine;
+    private int step;
+
+    @Setup
+    public void setUp() throws IOException {
+        level = LevelLoader.load("gen:301x301:1:" + ghosts);
+        restart();
+    }
+
+    @Benchmark
+    public GameState moveGhosts() {
+        if (state.getStatus() != GameState.Status.PLAYING) {
+            restart();
+        }
+        engine.steer(Direction.values()[1 + (step++ >> 3) % 4]);
+        engine.stepPacman();
+        engine.stepGhosts();
+        return state;
+    }
+
+    private void restart() {
+        state = new GameState(level);
+        engine = new GameEngine(state);
+    }
+}
@@ -0,0 +1,64 @@
+package xdeolit00;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * measures loading a level: parsing or generating it from scratch, reading its compiled binary form,
+ * and starting a new game from the cached template as done when a level is restarted.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LevelLoadBenchmark {
+    @Param({"levels/level1.txt", "levels/level2.txt", "levels/level3.txt", "gen:1001x1001:1"})
+    public String levelId;
+
+    private Path binary;
+    private Level level;
+
+    @Setup
+    public void setUp() throws IOException {
+        binary = Files.createTempFile("level", ".lvl");
+        LevelLoader.compile(levelId, binary);
+        level = LevelLoader.load(levelId);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(binary);
+    }
+
+    @Benchmark
+    public Level parse() throws IOException {
+        return LevelLoader.read(levelId);
+    }
+
+    @Benchmark
+    public Level readBinary() throws IOException {
+        return LevelLoader.read(binary.toString());
+    }
+
+    @Benchmark
+    public GameState restart() {
+        return new GameState(level);
+    }
+}
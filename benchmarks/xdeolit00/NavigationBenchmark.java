@@ -0,0 +1,77 @@
+package xdeolit00;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * compares planning a route between two random open cells with A* on the navigation graph
+ * to a breadth-first search over the grid towards the same cell, which is what the flow field of the ghosts does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NavigationBenchmark {
+    private static final int PAIRS = 1024;
+
+    @Param({"gen:101x101:1", "gen:1001x1001:1"})
+    public String levelId;
+
+    private Navigator navigator;
+    private FlowField flowField;
+    private int cols;
+    private final int[] from = new int[PAIRS], to = new int[PAIRS];
+    private int pair;
+
+    @Setup
+    public void setUp() throws IOException {
+        Level level = LevelLoader.load(levelId);
+        Board board = level.getBoard();
+        navigator = new Navigator(level.getNavigation());
+        flowField = new FlowField(board);
+        cols = board.getCols();
+        SplittableRandom random = new SplittableRandom(1);
+        for (int i = 0; i < PAIRS; i++) {
+            from[i] = openCell(board, random);
+            to[i] = openCell(board, random);
+        }
+    }
+
+    @Benchmark
+    public int graphRoute() {
+        int i = pair++ & (PAIRS - 1);
+        return navigator.plan(from[i], to[i], false);
+    }
+
+    @Benchmark
+    public int gridSearch() {
+        int i = pair++ & (PAIRS - 1);
+        flowField.update(to[i] / cols, to[i] % cols);
+        return flowField.distance(from[i] / cols, from[i] % cols);
+    }
+
+    private static int openCell(Board board, SplittableRandom random) {
+        while (true) {
+            int row = random.nextInt(board.getRows());
+            int col = random.nextInt(board.getCols());
+            if (board.tile(row, col) == Board.FLOOR) {
+                return row * board.getCols() + col;
+            }
+        }
+    }
+}
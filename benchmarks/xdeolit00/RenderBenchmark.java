@@ -0,0 +1,70 @@
+package xdeolit00;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.swing.SwingUtilities;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * measures GamePanel.render drawing a whole frame into an offscreen image,
+ * both with the actors resting on their cells and while they are drawn between two cells.
+ * the game loop is stopped so that the board does not change while it is rendered.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderBenchmark {
+    @Param({"levels/level1.txt", "gen:1001x1001:1"})
+    public String levelId;
+
+    private GamePanel panel;
+    private BufferedImage image;
+    private Graphics2D graphics;
+
+    @Setup
+    public void setUp() throws Exception {
+        SpriteCache.preload().join(); // the panel leaves the board out until the images are decoded
+        SwingUtilities.invokeAndWait(() -> {
+            panel = new GamePanel();
+            panel.setSize(600, 600);
+            panel.loadLevel(levelId);
+            panel.stopGame();
+        });
+        image = new BufferedImage(600, 600, BufferedImage.TYPE_INT_RGB);
+        graphics = image.createGraphics();
+        panel.render(graphics, 0); // render the static layer once, as the first frame on screen would
+    }
+
+    @TearDown
+    public void tearDown() {
+        graphics.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage frame() {
+        panel.render(graphics, 0);
+        return image;
+    }
+
+    @Benchmark
+    public BufferedImage interpolatedFrame() {
+        panel.render(graphics, 0.5);
+        return image;
+    }
+}
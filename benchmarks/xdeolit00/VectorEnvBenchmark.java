@@ -0,0 +1,61 @@
+package xdeolit00;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * measures a step of a batch of games with random actions, including writing the observations
+ * and resetting the games that ended. run with -prof gc to check that stepping does not allocate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VectorEnvBenchmark {
+    @Param({"16", "256"})
+    public int envs;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private VectorEnv env;
+    private int[] actions;
+    private final SplittableRandom random = new SplittableRandom(1);
+
+    @Setup
+    public void setUp() throws IOException {
+        env = new VectorEnv(Arrays.asList("levels/level1.txt", "levels/level2.txt", "levels/level3.txt"), envs, threads);
+        actions = new int[envs];
+    }
+
+    @TearDown
+    public void tearDown() {
+        env.close();
+    }
+
+    @Benchmark
+    public float[] step() {
+        for (int i = 0; i < actions.length; i++) {
+            actions[i] = random.nextInt(Direction.values().length);
+        }
+        env.step(actions);
+        return env.rewards();
+    }
+}
@@ -0,0 +1,72 @@
+package xdeolit00;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * checks that a client reports a malformed snapshot of the server as an IOException.
+ */
+class GameClientTest {
+
+    @Test
+    void unknownDirectionIsCorrupt() throws IOException {
+        IOException e = assertThrows(IOException.class, () -> join(full((byte) 9, (byte) 0)));
+        assertTrue(e.getMessage().contains("corrupt message"), e.getMessage());
+    }
+
+    @Test
+    void unknownStatusIsCorrupt() throws IOException {
+        IOException e = assertThrows(IOException.class, () -> join(full((byte) 0, (byte) 9)));
+        assertTrue(e.getMessage().contains("corrupt message"), e.getMessage());
+    }
+
+    /**
+     * builds a FULL snapshot of level 1 with Pacman at its start, up to and including the status.
+     */
+    private static ByteBuffer full(byte direction, byte status) {
+        ByteBuffer message = ByteBuffer.allocate(256);
+        message.put(Protocol.FULL);
+        Protocol.putString(message, "levels/level1.txt");
+        message.put(Protocol.SPECTATE);
+        Protocol.putVarLong(message, 0); // tick
+        Protocol.putVarLong(message, 1); // Pacman's row
+        Protocol.putVarLong(message, 1); // and column
+        message.put(direction);
+        message.put((byte) 0); // no key
+        Protocol.putVarLong(message, 0); // score
+        message.put(status);
+        message.flip();
+        ByteBuffer frame = ByteBuffer.allocate(message.remaining() + 8);
+        Protocol.putFrame(message, frame);
+        return frame.flip();
+    }
+
+    /**
+     * joins a fake server that answers with the given frame.
+     */
+    private static void join(ByteBuffer frame) throws IOException {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress("localhost", 0));
+            Thread answer = new Thread(() -> {
+                try (SocketChannel channel = server.accept()) {
+                    channel.read(ByteBuffer.allocate(Protocol.MAX_CLIENT_FRAME)); // the JOIN
+                    channel.write(frame);
+                    channel.read(ByteBuffer.allocate(1)); // wait for the client to hang up
+                } catch (IOException e) {
+                    // the test fails on the side of the client
+                }
+            }, "fake-server");
+            answer.start();
+            new GameClient((InetSocketAddress) server.getLocalAddress(), "session", "levels/level1.txt", false)
+                    .close();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package xdeolit00;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * checks that a misbehaving client is disconnected on its own and cannot take the server down with it.
+ */
+class GameServerTest {
+    private GameServer server;
+    private Thread thread;
+    private InetSocketAddress address;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = new GameServer(new InetSocketAddress("localhost", 0));
+        server.setMaxGeneratedCells(21 * 21);
+        address = new InetSocketAddress("localhost", server.getPort());
+        thread = new Thread(() -> {
+            try {
+                server.run();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }, "game-server");
+        thread.start();
+    }
+
+    @AfterEach
+    void stop() throws InterruptedException {
+        server.close();
+        thread.join(5000);
+    }
+
+    @Test
+    void truncatedJoinOnlyDisconnectsItsClient() throws IOException {
+        try (GameClient player = new GameClient(address, "other", "levels/level1.txt", true)) {
+            // a frame of one byte: JOIN without a name, a level or the control flag
+            assertDisconnected(new byte[] {1, Protocol.JOIN});
+            assertTrue(thread.isAlive());
+            assertEquals(1, server.getSessionCount());
+            assertTrue(player.receive(), "the other session still runs");
+        }
+        try (GameClient client = new GameClient(address, "after", "levels/level1.txt", false)) {
+            assertEquals(15, client.getState().getBoard().getRows());
+        }
+    }
+
+    @Test
+    void messageCannotReadIntoTheNextFrame() throws IOException {
+        // INPUT without its direction, followed by a frame that would supply it
+        assertDisconnected(new byte[] {1, Protocol.INPUT, 2, Protocol.INPUT, 4});
+        assertTrue(thread.isAlive());
+    }
+
+    @Test
+    void onlyAllowedLevelsCanBeJoined() throws IOException {
+        assertThrows(IOException.class, () -> new GameClient(address, "file", "pom.xml", false));
+        assertThrows(IOException.class, () -> new GameClient(address, "large", "gen:1001x1001:1", false));
+        try (GameClient client = new GameClient(address, "small", "gen:21x21:1", false)) {
+            assertEquals(21, client.getState().getBoard().getCols());
+        }
+        assertTrue(thread.isAlive());
+    }
+
+    /**
+     * sends raw bytes and waits for the server to close the connection.
+     */
+    private void assertDisconnected(byte[] frames) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            channel.write(ByteBuffer.wrap(frames));
+            channel.socket().setSoTimeout(5000);
+            assertEquals(-1, channel.socket().getInputStream().read(), "the server closes the connection");
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package xdeolit00;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * this class plays many headless games with a Controller and reports how well it did.
+ * every game gets its own GameState and GameEngine, so games share nothing but the immutable level
+ * templates and are spread over all cores with a fork-join pool.
+ *
+ * a level id may contain "{seed}", which is replaced by the seed of each game, so that
+ * e.g. "gen:101x101:{seed}" plays a different generated maze in every game.
+ */
+class BatchRunner {
+    static final String SEED_PLACEHOLDER = "{seed}";
+    // games are split between the workers in batches of this size
+    private static final int BATCH_SIZE = 16;
+
+    private final String controller;
+    private final long maxTicks;
+    private int pacmanInterval = GameEngine.DEFAULT_PACMAN_INTERVAL;
+    private int ghostInterval = GameEngine.DEFAULT_GHOST_INTERVAL;
+    private Path recordDirectory; // null unless the games are recorded
+
+    /**
+     * constructs a runner.
+     *
+     * @param controller the name of the controller playing the games, see Controller.create
+     * @param maxTicks the number of ticks after which a game that is still running counts as a timeout
+     */
+    BatchRunner(String controller, long maxTicks) {
+        Controller.create(controller, 0); // fail early on an unknown name
+        this.controller = controller;
+        this.maxTicks = maxTicks;
+    }
+
+    public void setPacmanInterval(int ticks) {
+        pacmanInterval = ticks;
+    }
+
+    public void setGhostInterval(int ticks) {
+        ghostInterval = ticks;
+    }
+
+    /**
+     * makes the runner save a Recording of every game it plays.
+     *
+     * @param directory the existing directory to save the recordings to, or null to not record
+     */
+    public void setRecordDirectory(Path directory) {
+        recordDirectory = directory;
+    }
+
+    /**
+     * plays a single game until it is won, lost or runs out of ticks.
+     *
+     * @param levelId the level to play, "{seed}" is replaced by the seed
+     * @param seed the seed of the game, passed to the controller
+     * @return the result of the game
+     * @throws IOException if the level cannot be loaded
+     */
+    public GameResult play(String levelId, long seed) throws IOException {
+        Level level;
+        if (levelId.contains(SEED_PLACEHOLDER)) {
+            // every seed names a different level, caching them would only fill the memory
+            levelId = levelId.replace(SEED_PLACEHOLDER, Long.toString(seed));
+            level = LevelLoader.read(levelId);
+        } else {
+            level = LevelLoader.load(levelId);
+        }
+
+        GameState state = new GameState(level);
+        GameEngine engine = new GameEngine(state);
+        engine.setPacmanInterval(pacmanInterval);
+        engine.setGhostInterval(ghostInterval);
+        Controller bot = Controller.create(controller, seed);
+        Recording recording = recordDirectory == null ? null : new Recording(levelId, seed, pacmanInterval,
+                ghostInterval, Recording.DEFAULT_CHECKSUM_INTERVAL);
+        while (state.getStatus() == GameState.Status.PLAYING && state.getTick() < maxTicks) {
+            Direction input = bot.decide(state);
+            engine.tick(input);
+            if (recording != null) {
+                recording.record(input, state);
+            }
+        }
+        if (recording != null) {
+            String name = levelId.replaceAll("[^A-Za-z0-9.-]", "_") + "-" + controller + "-" + seed + ".pacrec";
+            recording.save(recordDirectory.resolve(name));
+        }
+        return GameResult.of(levelId, seed, controller, state);
+    }
+
+    /**
+     * plays a number of games on every level in parallel.
+     * game i on a level uses the seed firstSeed + i, so a run can be repeated exactly.
+     *
+     * @param levelIds the levels to play
+     * @param games the number of games per level
+     * @param firstSeed the seed of the first game on each level
+     * @param pool the pool to run the games on
+     * @return the results, ordered by level and seed
+     * @throws IOException if a level cannot be loaded
+     */
+    public GameResult[] run(List<String> levelIds, int games, long firstSeed, ForkJoinPool pool) throws IOException {
+        GameResult[] results = new GameResult[levelIds.size() * games];
+        try {
+            pool.invoke(new Batch(levelIds, games, firstSeed, results, 0, results.length));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return results;
+    }
+
+    /**
+     * plays the games from one index to another, splitting the range until it is small enough.
+     */
+    private class Batch extends RecursiveAction {
+        private final List<String> levelIds;
+        private final int games;
+        private final long firstSeed;
+        private final GameResult[] results;
+        private final int from, to;
+
+        Batch(List<String> levelIds, int games, long firstSeed, GameResult[] results, int from, int to) {
+            this.levelIds = levelIds;
+            this.games = games;
+            this.firstSeed = firstSeed;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > BATCH_SIZE) {
+                int middle = (from + to) >>> 1;
+                ForkJoinTask.invokeAll(new Batch(levelIds, games, firstSeed, results, from, middle),
+                        new Batch(levelIds, games, firstSeed, results, middle, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                try {
+                    results[i] = play(levelIds.get(i / games), firstSeed + i % games);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * prints the win rate, the score distribution and the ticks needed to reach the gate,
+     * for every level and for all games together.
+     *
+     * @param results the results to summarise
+     * @param elapsedNanos how long playing the games took
+     */
+    static void report(GameResult[] results, long elapsedNanos) {
+        Map<String, List<GameResult>> byLevel = new LinkedHashMap<>();
+        for (GameResult result : results) {
+            byLevel.computeIfAbsent(result.getLevelGroup(), key -> new ArrayList<>()).add(result);
+        }
+        if (byLevel.size() > 1) {
+            for (Map.Entry<String, List<GameResult>> entry : byLevel.entrySet()) {
+                summarise(entry.getKey(), entry.getValue());
+            }
+        }
+        summarise("all levels", Arrays.asList(results));
+
+        double seconds = elapsedNanos / 1e9;
+        long ticks = 0;
+        for (GameResult result : results) {
+            ticks += result.getTicks();
+        }
+        System.out.printf("%d games in %.2fs: %.0f games/min, %.0f ticks/s%n",
+                results.length, seconds, results.length / seconds * 60, ticks / seconds);
+    }
+
+    private static void summarise(String name, List<GameResult> results) {
+        int won = 0, lost = 0;
+        int[] scores = new int[results.size()];
+        long[] ticksToGate = new long[results.size()];
+        for (int i = 0; i < results.size(); i++) {
+            GameResult result = results.get(i);
+            scores[i] = result.getScore();
+            if (result.getOutcome() == GameResult.Outcome.WON) {
+                ticksToGate[won++] = result.getTicks();
+            } else if (result.getOutcome() == GameResult.Outcome.LOST) {
+                lost++;
+            }
+        }
+        Arrays.sort(scores);
+        ticksToGate = Arrays.copyOf(ticksToGate, won);
+        Arrays.sort(ticksToGate);
+
+        System.out.println(name + ":");
+        System.out.printf("  games %d, won %d (%.1f%%), lost %d, timed out %d%n", results.size(), won,
+                100.0 * won / results.size(), lost, results.size() - won - lost);
+        System.out.printf("  score       min %d, p50 %d, p90 %d, max %d, mean %.1f%n", scores[0],
+                scores[percentile(scores.length, 50)], scores[percentile(scores.length, 90)],
+                scores[scores.length - 1], Arrays.stream(scores).average().orElse(0));
+        if (won > 0) {
+            System.out.printf("  ticks to gate min %d, p50 %d, p90 %d, max %d, mean %.1f%n", ticksToGate[0],
+                    ticksToGate[percentile(won, 50)], ticksToGate[percentile(won, 90)],
+                    ticksToGate[won - 1], Arrays.stream(ticksToGate).average().orElse(0));
+        }
+    }
+
+    /**
+     * gets the index of a percentile in a sorted array using the nearest-rank method.
+     */
+    private static int percentile(int length, int percent) {
+        return Math.max(0, (int) Math.ceil(length * percent / 100.0) - 1);
+    }
+
+    /**
+     * runs a batch from the command line.
+     * usage: batch [--controller greedy|random] [--games N] [--seed S] [--threads T] [--max-ticks M]
+     * [--pacman-interval TICKS] [--ghost-interval TICKS] [--record DIRECTORY] [--results FILE] level...
+     * with --results the results are also appended to a ResultStore.
+     *
+     * @param args the arguments following "batch"
+     * @throws IOException if a level cannot be loaded
+     */
+    public static void main(String[] args) throws IOException {
+        String controller = "greedy";
+        int games = 1000;
+        long seed = 1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long maxTicks = 1_000_000;
+        int pacmanInterval = GameEngine.DEFAULT_PACMAN_INTERVAL;
+        int ghostInterval = GameEngine.DEFAULT_GHOST_INTERVAL;
+        Path recordDirectory = null;
+        Path resultsFile = null;
+        List<String> levels = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--controller": controller = args[++i]; break;
+                case "--games": games = Integer.parseInt(args[++i]); break;
+                case "--seed": seed = Long.parseLong(args[++i]); break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--max-ticks": maxTicks = Long.parseLong(args[++i]); break;
+                case "--pacman-interval": pacmanInterval = Integer.parseInt(args[++i]); break;
+                case "--ghost-interval": ghostInterval = Integer.parseInt(args[++i]); break;
+                case "--record": recordDirectory = Path.of(args[++i]); break;
+                case "--results": resultsFile = Path.of(args[++i]); break;
+                default: levels.add(args[i]);
+            }
+        }
+        if (games < 1) {
+            throw new IllegalArgumentException("--games must be at least 1");
+        }
+        if (levels.isEmpty()) {
+            levels = List.of("levels/level1.txt", "levels/level2.txt", "levels/level3.txt");
+        }
+
+        BatchRunner runner = new BatchRunner(controller, maxTicks);
+        runner.setPacmanInterval(pacmanInterval);
+        runner.setGhostInterval(ghostInterval);
+        if (recordDirectory != null) {
+            Files.createDirectories(recordDirectory);
+            runner.setRecordDirectory(recordDirectory);
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            long start = System.nanoTime();
+            GameResult[] results = runner.run(levels, games, seed, pool);
+            report(results, System.nanoTime() - start);
+            if (resultsFile != null) {
+                try (ResultStore store = new ResultStore(resultsFile)) {
+                    store.append(Arrays.asList(results));
+                    System.out.println(store.size() + " results stored in " + resultsFile);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
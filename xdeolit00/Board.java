@@ -0,0 +1,439 @@
+package xdeolit00;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * this class stores the tiles of the game board in compact primitive arrays.
+ * each cell takes one byte for its tile (floor, wall, gate or key) and one bit in a separate pellet bitset.
+ * the number of remaining pellets is counted as they are eaten, so checking if the board is cleared is O(1).
+ * Pacman and the ghosts are not part of the board, their positions are kept by the GameState.
+ *
+ * copies of a board share its data until either of them changes it (copy-on-write). the pellet bitset is
+ * split into pages of PAGE_CELLS cells and only the page holding a changed cell is copied, the tiles are
+ * copied as a whole, which happens once per game when the key is taken. so copying a board only costs
+ * a reference per page, which keeps snapshots of every tick cheap even on very large boards.
+ */
+class Board {
+    // tile values
+    static final byte FLOOR = 0;
+    static final byte WALL = 1;
+    static final byte GATE = 2;
+    static final byte KEY = 3;
+
+    // the pellet bitset is shared between copies in pages of this many cells
+    static final int PAGE_CELLS = 4096;
+    private static final int PAGE_SHIFT = 12;
+    private static final int WORDS_PER_PAGE = PAGE_CELLS / 64;
+
+    private final int rows, cols;
+    private byte[] tiles;
+    private final long[][] pelletPages;
+    private int remainingPellets;
+
+    // which data is shared with copies of the board and has to be copied before it is changed.
+    // a page is owned by this board if it was copied in the current version, sharing starts a new version
+    private boolean tilesShared;
+    private int[] pageVersions; // allocated once the board changes a page, snapshots never do
+    private int version;
+    private boolean shared; // nothing has changed since the data was last shared
+    private Board lastCopy; // the last snapshot of the board, as long as the board has not changed since
+
+    // the cells changed since the last clearChanges, only kept once trackChanges has been called
+    private int[] changes;
+    private int changeCount;
+
+    /**
+     * constructs an empty board where every cell is floor without a pellet.
+     *
+     * @param rows the number of rows
+     * @param cols the number of columns
+     */
+    Board(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        this.tiles = new byte[rows * cols];
+        int pages = (rows * cols + PAGE_CELLS - 1) >>> PAGE_SHIFT;
+        this.pelletPages = new long[pages][WORDS_PER_PAGE];
+        this.pageVersions = new int[pages];
+    }
+
+    /**
+     * constructs a copy of another board. the copy shares the data of the other board until one of them changes it.
+     *
+     * @param other the board to copy
+     */
+    Board(Board other) {
+        this.rows = other.rows;
+        this.cols = other.cols;
+        other.markShared();
+        this.tiles = other.tiles;
+        this.tilesShared = true;
+        this.pelletPages = other.pelletPages.clone();
+        this.version = 1; // no page has been copied in this version yet
+        this.shared = true;
+        this.remainingPellets = other.remainingPellets;
+    }
+
+    /**
+     * takes a snapshot of the board, which shares the data of the board until one of them changes it.
+     * if the board has not changed since the last snapshot, the same snapshot is returned.
+     *
+     * @return a copy of the board that must be treated as read-only
+     */
+    Board snapshot() {
+        if (lastCopy == null) {
+            lastCopy = new Board(this);
+        }
+        return lastCopy;
+    }
+
+    /**
+     * makes the board equal to a snapshot of a board of the same size, sharing the data of the snapshot.
+     * the restored cells are not reported as changes.
+     *
+     * @param snapshot the board to restore, e.g. taken by snapshot
+     */
+    void restore(Board snapshot) {
+        if (snapshot.rows != rows || snapshot.cols != cols) {
+            throw new IllegalArgumentException("the snapshot is " + snapshot.rows + "x" + snapshot.cols
+                    + ", the board " + rows + "x" + cols);
+        }
+        snapshot.markShared();
+        tiles = snapshot.tiles;
+        tilesShared = true;
+        System.arraycopy(snapshot.pelletPages, 0, pelletPages, 0, pelletPages.length);
+        version++;
+        shared = true;
+        remainingPellets = snapshot.remainingPellets;
+        lastCopy = snapshot;
+    }
+
+    /**
+     * makes the board equal to another board of the same size by copying the data of the other board.
+     * unlike restore, nothing is shared afterwards: once the board owns all of its data, e.g. after the first
+     * copy, copying again does not allocate. the copied cells are not reported as changes.
+     *
+     * @param other the board to copy, e.g. the template of a level
+     */
+    void copyFrom(Board other) {
+        if (other.rows != rows || other.cols != cols) {
+            throw new IllegalArgumentException("the other board is " + other.rows + "x" + other.cols
+                    + ", this board " + rows + "x" + cols);
+        }
+        if (tilesShared) {
+            tiles = other.tiles.clone();
+            tilesShared = false;
+        } else {
+            System.arraycopy(other.tiles, 0, tiles, 0, tiles.length);
+        }
+        if (pageVersions == null) {
+            pageVersions = new int[pelletPages.length];
+        }
+        for (int i = 0; i < pelletPages.length; i++) {
+            if (pageVersions[i] == version) {
+                System.arraycopy(other.pelletPages[i], 0, pelletPages[i], 0, WORDS_PER_PAGE);
+            } else {
+                pelletPages[i] = other.pelletPages[i].clone();
+                pageVersions[i] = version;
+            }
+        }
+        remainingPellets = other.remainingPellets;
+        shared = false;
+        lastCopy = null;
+    }
+
+    /**
+     * finds the cells in which another board of the same size differs from this one, in their tile or their pellet.
+     * the pellets are compared a word of 64 cells at a time and only the words that differ are looked into,
+     * and pages and tiles that the boards share are not compared at all, so comparing a level with an edited
+     * version of it costs little more than reading it.
+     *
+     * @param other the board to compare with
+     * @return the indexes of the differing cells, row * cols + col, in ascending order
+     */
+    int[] diff(Board other) {
+        if (other.rows != rows || other.cols != cols) {
+            throw new IllegalArgumentException("the other board is " + other.rows + "x" + other.cols
+                    + ", this board " + rows + "x" + cols);
+        }
+        int[] cells = new int[16];
+        int count = 0;
+        boolean sameTiles = tiles == other.tiles;
+        for (int word = 0; word < words(); word++) {
+            long[] page = pelletPages[word / WORDS_PER_PAGE];
+            long[] otherPage = other.pelletPages[word / WORDS_PER_PAGE];
+            long pellets = page == otherPage ? 0 : page[word % WORDS_PER_PAGE] ^ otherPage[word % WORDS_PER_PAGE];
+            int first = word << 6;
+            int last = Math.min(first + 64, rows * cols);
+            if (pellets == 0 && (sameTiles || Arrays.mismatch(tiles, first, last, other.tiles, first, last) < 0)) {
+                continue;
+            }
+            for (int cell = first; cell < last; cell++) {
+                if ((pellets & (1L << cell)) != 0 || tiles[cell] != other.tiles[cell]) {
+                    if (count == cells.length) {
+                        cells = Arrays.copyOf(cells, count * 2);
+                    }
+                    cells[count++] = cell;
+                }
+            }
+        }
+        return Arrays.copyOf(cells, count);
+    }
+
+    /**
+     * marks all data of the board as shared, so that it is copied before it is changed.
+     * a board whose data is already shared is only read, so several threads can copy a level template at once.
+     */
+    void markShared() {
+        if (!shared) {
+            tilesShared = true;
+            version++;
+            shared = true;
+        }
+    }
+
+    /**
+     * writes the tiles and pellets of the board to a binary stream.
+     * the tiles are written as one byte per cell, followed by the words of the pellet bitset.
+     *
+     * @param out the stream to write to
+     * @throws IOException if writing fails
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        out.write(tiles);
+        for (int i = 0; i < words(); i++) {
+            out.writeLong(pelletPages[i / WORDS_PER_PAGE][i % WORDS_PER_PAGE]);
+        }
+    }
+
+    /**
+     * reads a board written by writeTo.
+     *
+     * @param in the buffer to read from, positioned at the first tile
+     * @param rows the number of rows of the board
+     * @param cols the number of columns of the board
+     * @return the board
+     */
+    static Board readFrom(ByteBuffer in, int rows, int cols) {
+        Board board = new Board(rows, cols);
+        in.get(board.tiles);
+        for (int i = 0; i < board.words(); i++) {
+            long word = in.getLong();
+            board.pelletPages[i / WORDS_PER_PAGE][i % WORDS_PER_PAGE] = word;
+            board.remainingPellets += Long.bitCount(word);
+        }
+        return board;
+    }
+
+    /**
+     * calculates a hash of the pellets left on the board.
+     * the tiles are not part of it, in a running game only the key changes them and that is tracked by the GameState.
+     *
+     * @return the hash of the pellet bitset
+     */
+    long pelletChecksum() {
+        long hash = remainingPellets;
+        for (int i = 0; i < words(); i++) {
+            hash = hash * 0x9E3779B97F4A7C15L + pelletPages[i / WORDS_PER_PAGE][i % WORDS_PER_PAGE];
+        }
+        return hash;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * checks if a position lies on the board.
+     *
+     * @param row the row of the cell
+     * @param col the column of the cell
+     * @return true if the cell is inside the board
+     */
+    public boolean inBounds(int row, int col) {
+        return row >= 0 && row < rows && col >= 0 && col < cols;
+    }
+
+    /**
+     * gets the tile of a cell.
+     *
+     * @param row the row of the cell, must be inside the board
+     * @param col the column of the cell, must be inside the board
+     * @return FLOOR, WALL, GATE or KEY
+     */
+    public byte tile(int row, int col) {
+        return tiles[row * cols + col];
+    }
+
+    /**
+     * checks if a cell is a wall. cells outside the board count as walls.
+     *
+     * @param row the row of the cell
+     * @param col the column of the cell
+     * @return true if nothing can enter the cell
+     */
+    public boolean isWall(int row, int col) {
+        return !inBounds(row, col) || tiles[row * cols + col] == WALL;
+    }
+
+    /**
+     * checks if a cell holds a pellet.
+     *
+     * @param row the row of the cell, must be inside the board
+     * @param col the column of the cell, must be inside the board
+     * @return true if there is a pellet to collect
+     */
+    public boolean hasPellet(int row, int col) {
+        int cell = row * cols + col;
+        return (pelletPages[cell >>> PAGE_SHIFT][(cell >>> 6) & (WORDS_PER_PAGE - 1)] & (1L << cell)) != 0;
+    }
+
+    /**
+     * gets the number of pellets that have not been eaten yet.
+     *
+     * @return the remaining pellets
+     */
+    public int getRemainingPellets() {
+        return remainingPellets;
+    }
+
+    /**
+     * checks if all pellets of the board have been eaten.
+     *
+     * @return true if no pellets are left
+     */
+    public boolean isCleared() {
+        return remainingPellets == 0;
+    }
+
+    /**
+     * changes the tile of a cell.
+     *
+     * @param row the row of the cell
+     * @param col the column of the cell
+     * @param tile FLOOR, WALL, GATE or KEY
+     */
+    void setTile(int row, int col, byte tile) {
+        int cell = row * cols + col;
+        if (tiles[cell] != tile) {
+            if (tilesShared) {
+                tiles = tiles.clone();
+                tilesShared = false;
+            }
+            shared = false;
+            lastCopy = null;
+            tiles[cell] = tile;
+            changed(cell);
+        }
+    }
+
+    /**
+     * puts a pellet on a cell or removes it, keeping the pellet counter up to date.
+     *
+     * @param row the row of the cell
+     * @param col the column of the cell
+     * @param pellet true to put a pellet on the cell, false to remove it
+     */
+    void setPellet(int row, int col, boolean pellet) {
+        int cell = row * cols + col;
+        long bit = 1L << cell;
+        int page = cell >>> PAGE_SHIFT;
+        int word = (cell >>> 6) & (WORDS_PER_PAGE - 1);
+        boolean present = (pelletPages[page][word] & bit) != 0;
+        if (pellet == present) {
+            return;
+        }
+        if (pageVersions == null) {
+            pageVersions = new int[pelletPages.length];
+        }
+        if (pageVersions[page] != version) {
+            pelletPages[page] = pelletPages[page].clone();
+            pageVersions[page] = version;
+        }
+        shared = false;
+        lastCopy = null;
+        if (pellet) {
+            pelletPages[page][word] |= bit;
+            remainingPellets++;
+        } else {
+            pelletPages[page][word] &= ~bit;
+            remainingPellets--;
+        }
+        changed(cell);
+    }
+
+    /**
+     * removes the pellet from a cell.
+     *
+     * @param row the row of the cell
+     * @param col the column of the cell
+     * @return true if there was a pellet to eat
+     */
+    boolean eatPellet(int row, int col) {
+        if (!hasPellet(row, col)) {
+            return false;
+        }
+        setPellet(row, col, false);
+        return true;
+    }
+
+    /**
+     * starts recording which cells are changed, e.g. to send only the changed cells of a running game to its viewers.
+     * a board that is not tracked does not pay for the bookkeeping.
+     */
+    void trackChanges() {
+        if (changes == null) {
+            changes = new int[16];
+        }
+    }
+
+    /**
+     * gets the number of cells changed since the changes were last cleared.
+     *
+     * @return the number of changed cells, 0 if changes are not tracked
+     */
+    int getChangeCount() {
+        return changeCount;
+    }
+
+    /**
+     * gets a changed cell.
+     *
+     * @param i the number of the change, from 0 to getChangeCount() - 1
+     * @return the index of the cell, row * cols + col
+     */
+    int getChangedCell(int i) {
+        return changes[i];
+    }
+
+    /**
+     * forgets the changed cells, e.g. after they have been sent.
+     */
+    void clearChanges() {
+        changeCount = 0;
+    }
+
+    /**
+     * gets the number of words of the pellet bitset that hold cells of the board.
+     */
+    private int words() {
+        return (rows * cols + 63) >>> 6;
+    }
+
+    private void changed(int cell) {
+        if (changes == null || (changeCount > 0 && changes[changeCount - 1] == cell)) {
+            return; // not tracked, or e.g. the key and the pellet of the same cell taken at once
+        }
+        if (changeCount == changes.length) {
+            changes = Arrays.copyOf(changes, changeCount * 2);
+        }
+        changes[changeCount++] = cell;
+    }
+}
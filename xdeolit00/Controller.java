@@ -0,0 +1,35 @@
+package xdeolit00;
+
+/**
+ * this interface is implemented by scripted players that steer Pacman in headless games.
+ * a controller is asked for a direction before every tick and belongs to a single game,
+ * so it may keep state about that game between calls.
+ */
+interface Controller {
+    /**
+     * decides which way Pacman should go next.
+     *
+     * @param state the current state of the game, which must not be modified
+     * @return the direction to steer Pacman in, or NONE to keep the current direction
+     */
+    Direction decide(GameState state);
+
+    /**
+     * creates a controller by its name.
+     *
+     * @param name "greedy" for a bot heading for the key and then the gate, or "random" for a random walk
+     * @param seed the seed for controllers that make random choices
+     * @return a new controller for a single game
+     * @throws IllegalArgumentException if there is no controller with that name
+     */
+    static Controller create(String name, long seed) {
+        switch (name) {
+            case "greedy":
+                return new GreedyController();
+            case "random":
+                return new RandomController(seed);
+            default:
+                throw new IllegalArgumentException("unknown controller: " + name);
+        }
+    }
+}
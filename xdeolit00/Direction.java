@@ -0,0 +1,38 @@
+package xdeolit00;
+
+/**
+ * this enum represents the directions Pacman can be steered in.
+ * each direction stores the row and column offsets of a single step on the board.
+ */
+enum Direction {
+    NONE(0, 0),
+    UP(-1, 0),
+    DOWN(1, 0),
+    LEFT(0, -1),
+    RIGHT(0, 1);
+
+    private final int rowOffset, colOffset;
+
+    Direction(int rowOffset, int colOffset) {
+        this.rowOffset = rowOffset;
+        this.colOffset = colOffset;
+    }
+
+    /**
+     * gets the row offset of a single step in this direction.
+     *
+     * @return -1, 0 or 1
+     */
+    public int getRowOffset() {
+        return rowOffset;
+    }
+
+    /**
+     * gets the column offset of a single step in this direction.
+     *
+     * @return -1, 0 or 1
+     */
+    public int getColOffset() {
+        return colOffset;
+    }
+}
@@ -0,0 +1,113 @@
+package xdeolit00;
+
+import java.util.Arrays;
+
+/**
+ * this class holds a distance field over the board, measuring how many steps each cell is away from Pacman.
+ * the field is computed with a breadth-first search from Pacman's cell and shared by all ghosts,
+ * so a ghost only has to look up the distances of its neighbouring cells to chase Pacman.
+ * the search is only repeated when Pacman has moved to a different cell since the last update.
+ */
+class FlowField {
+    static final int UNREACHABLE = -1;
+
+    private final Board board;
+    private final int rows, cols;
+    private final int[] distances;
+    private final int[] queue; // reused between searches to avoid allocating on every update
+    private int targetRow = -1, targetCol = -1;
+    private boolean valid = false;
+
+    /**
+     * constructs a distance field for the given board.
+     *
+     * @param board the game board, walls block the search
+     */
+    FlowField(Board board) {
+        this.board = board;
+        this.rows = board.getRows();
+        this.cols = board.getCols();
+        this.distances = new int[rows * cols];
+        this.queue = new int[rows * cols];
+    }
+
+    /**
+     * makes sure the field measures distances to the given cell.
+     * the search is skipped when the target cell has not changed since the last update.
+     *
+     * @param row the row of the target cell, usually Pacman's position
+     * @param col the column of the target cell
+     */
+    public void update(int row, int col) {
+        if (valid && row == targetRow && col == targetCol) {
+            return;
+        }
+        targetRow = row;
+        targetCol = col;
+        valid = true;
+
+        Arrays.fill(distances, UNREACHABLE);
+        if (!isPassable(row, col)) {
+            return;
+        }
+
+        // breadth-first search from the target cell
+        int head = 0, tail = 0;
+        int start = row * cols + col;
+        distances[start] = 0;
+        queue[tail++] = start;
+        while (head < tail) {
+            int cell = queue[head++];
+            int cellRow = cell / cols;
+            int cellCol = cell - cellRow * cols;
+            int next = distances[cell] + 1;
+            tail = visit(cellRow - 1, cellCol, next, tail);
+            tail = visit(cellRow + 1, cellCol, next, tail);
+            tail = visit(cellRow, cellCol - 1, next, tail);
+            tail = visit(cellRow, cellCol + 1, next, tail);
+        }
+    }
+
+    /**
+     * forces the next update to search again, e.g. after the layout of the board changed.
+     */
+    public void invalidate() {
+        valid = false;
+    }
+
+    /**
+     * gets the number of steps needed to get from a cell to the target cell.
+     *
+     * @param row the row of the cell
+     * @param col the column of the cell
+     * @return the distance, or UNREACHABLE for walls, cells outside the board and cells cut off from the target
+     */
+    public int distance(int row, int col) {
+        if (row < 0 || row >= rows || col < 0 || col >= cols) {
+            return UNREACHABLE;
+        }
+        return distances[row * cols + col];
+    }
+
+    /**
+     * adds a neighbouring cell to the search queue if it has not been reached yet.
+     *
+     * @return the new end of the queue
+     */
+    private int visit(int row, int col, int distance, int tail) {
+        if (!isPassable(row, col)) {
+            return tail;
+        }
+        int cell = row * cols + col;
+        if (distances[cell] != UNREACHABLE) {
+            return tail;
+        }
+        distances[cell] = distance;
+        queue[tail] = cell;
+        return tail + 1;
+    }
+
+    private boolean isPassable(int row, int col) {
+        return !board.isWall(row, col);
+    }
+}
@@ -0,0 +1,380 @@
+package xdeolit00;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * this class connects to a GameServer and keeps a copy of the game of a session.
+ * the copy is built from the FULL snapshot the server sends on joining, on the level the client loads itself,
+ * and then kept up to date by applying the DELTA snapshots of every tick. the checksums in the snapshots are
+ * compared to the checksum of the copy, so a client notices if it no longer shows the game the server runs.
+ * a client that was granted control steers Pacman with send.
+ */
+class GameClient implements Closeable {
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final GameState.Status[] STATUSES = GameState.Status.values();
+
+    private final SocketChannel channel;
+    private ByteBuffer in = ByteBuffer.allocateDirect(64 * 1024);
+    private final ByteBuffer out = ByteBuffer.allocate(Protocol.MAX_CLIENT_FRAME);
+    private final ByteBuffer message = ByteBuffer.allocate(Protocol.MAX_CLIENT_FRAME);
+
+    private Level level; // the level of the last FULL snapshot
+    private GameState state;
+    private boolean control;
+    private long step; // counts the ghost moves, passed to Ghost.commit
+    private long bytesReceived;
+    private long snapshots;
+    private long mismatches;
+
+    /**
+     * connects to a server and joins a session, starting it on the given level if it does not exist yet.
+     * the call returns once the FULL snapshot of the session has arrived.
+     *
+     * @param address the address of the server
+     * @param session the name of the session
+     * @param levelId the level to start the session on
+     * @param control true to ask for control of Pacman, which is granted if no other client has it
+     * @throws IOException if the server cannot be reached or refuses the client
+     */
+    GameClient(InetSocketAddress address, String session, String levelId, boolean control) throws IOException {
+        channel = SocketChannel.open(address);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        message.clear();
+        message.put(Protocol.JOIN);
+        Protocol.putString(message, session);
+        Protocol.putString(message, levelId);
+        message.put(control ? Protocol.CONTROL : Protocol.SPECTATE);
+        write();
+        in.flip();
+        try {
+            if (!receive()) {
+                throw new EOFException("closed by the server");
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * gets the copy of the game, which is changed by receive.
+     *
+     * @return the state of the game as of the last snapshot
+     */
+    public GameState getState() {
+        return state;
+    }
+
+    /**
+     * checks if this client steers Pacman.
+     *
+     * @return true if the server granted control
+     */
+    public boolean hasControl() {
+        return control;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public long getSnapshots() {
+        return snapshots;
+    }
+
+    /**
+     * gets the number of snapshots whose checksum did not match the copy of the game.
+     *
+     * @return the number of mismatches, 0 if the copy is exact
+     */
+    public long getMismatches() {
+        return mismatches;
+    }
+
+    /**
+     * asks the server to turn Pacman. ignored by the server if this client does not have control.
+     *
+     * @param direction the direction to turn to
+     * @throws IOException if the message cannot be sent
+     */
+    public void send(Direction direction) throws IOException {
+        message.clear();
+        message.put(Protocol.INPUT);
+        message.put((byte) direction.ordinal());
+        write();
+    }
+
+    /**
+     * waits for the next snapshot and applies it to the copy of the game.
+     *
+     * @return true if a snapshot was applied, false if the server closed the connection
+     * @throws IOException if reading fails or the server sent an error
+     */
+    public boolean receive() throws IOException {
+        int length;
+        while ((length = Protocol.nextFrame(in)) < 0) {
+            in.compact();
+            if (!in.hasRemaining()) {
+                ByteBuffer grown = ByteBuffer.allocateDirect(in.capacity() * 2);
+                grown.put(in.flip());
+                in = grown;
+            }
+            int read = channel.read(in);
+            in.flip();
+            if (read < 0) {
+                return false;
+            }
+            bytesReceived += read;
+        }
+        int end = in.position() + length;
+        byte type = in.get();
+        switch (type) {
+            case Protocol.FULL: applyFull(); break;
+            case Protocol.DELTA: applyDelta(); break;
+            case Protocol.ERROR: throw new IOException(Protocol.getString(in));
+            default: throw new IOException("unknown message " + type);
+        }
+        if (in.position() != end) {
+            throw new IOException("corrupt message: " + (end - in.position()) + " bytes left over");
+        }
+        snapshots++;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * replaces the copy of the game with the state in a FULL snapshot.
+     */
+    private void applyFull() throws IOException {
+        String levelId = Protocol.getString(in);
+        if (level == null || !level.getId().equals(levelId)) {
+            // generated mazes are not cached, a client may join any number of them
+            level = levelId.startsWith(MazeGenerator.PREFIX) ? LevelLoader.read(levelId) : LevelLoader.load(levelId);
+        }
+        control = in.get() == Protocol.CONTROL;
+        state = new GameState(level);
+        step = 0;
+        state.setTick(Protocol.getVarLong(in));
+        state.setPlayerPosition(Protocol.getVarInt(in), Protocol.getVarInt(in));
+        state.setDirection(direction());
+        if (in.get() != 0) {
+            state.collectKey();
+        }
+        state.addScore(Protocol.getVarInt(in));
+        state.setStatus(status());
+        applyCells();
+
+        int ghosts = Protocol.getVarInt(in);
+        if (ghosts != state.ghosts().size()) {
+            throw new IOException("level " + level.getId() + " has " + state.ghosts().size()
+                    + " ghosts, the server has " + ghosts);
+        }
+        OccupancyGrid occupancy = state.getOccupancy();
+        occupancy.clear();
+        for (int i = 0; i < ghosts; i++) {
+            Ghost ghost = state.ghosts().get(i);
+            ghost.setPosition(Protocol.getVarInt(in), Protocol.getVarInt(in));
+            occupancy.place(i, ghost.getRow(), ghost.getCol());
+        }
+    }
+
+    /**
+     * applies the changes in a DELTA snapshot to the copy of the game.
+     */
+    private void applyDelta() throws IOException {
+        if (state == null) {
+            throw new IOException("delta before the full snapshot");
+        }
+        state.setTick(state.getTick() + Protocol.getVarLong(in));
+        int flags = in.get() & 0xFF;
+        if ((flags & SnapshotEncoder.PACMAN) != 0) {
+            state.setPlayerPosition(Protocol.getVarInt(in), Protocol.getVarInt(in));
+        }
+        if ((flags & SnapshotEncoder.DIRECTION) != 0) {
+            state.setDirection(direction());
+        }
+        if ((flags & SnapshotEncoder.SCORE) != 0) {
+            state.addScore(Protocol.getVarInt(in) - state.getScore());
+        }
+        if ((flags & SnapshotEncoder.KEY) != 0) {
+            state.collectKey();
+        }
+        if ((flags & SnapshotEncoder.STATUS) != 0) {
+            state.setStatus(status());
+        }
+        long checksum = (flags & SnapshotEncoder.CHECKSUM) != 0 ? in.getLong() : 0;
+        if ((flags & SnapshotEncoder.CELLS) != 0) {
+            applyCells();
+        }
+        if ((flags & SnapshotEncoder.GHOSTS) != 0) {
+            step++;
+            List<Ghost> ghosts = state.ghosts();
+            OccupancyGrid occupancy = state.getOccupancy();
+            int moved = Protocol.getVarInt(in);
+            int ghost = -1;
+            for (int i = 0; i < moved; i++) {
+                long move = Protocol.getVarLong(in);
+                ghost += (int) (move >>> 2) + 1;
+                if (ghost < 0 || ghost >= ghosts.size()) {
+                    throw new IOException("corrupt message: ghost " + ghost + " of " + ghosts.size());
+                }
+                // the server committed the moves in this order, so every target cell is free here as well
+                ghosts.get(ghost).commit((int) (move & 3), occupancy, step);
+            }
+        }
+        if ((flags & SnapshotEncoder.CHECKSUM) != 0) {
+            verify(checksum);
+        }
+    }
+
+    private void applyCells() throws IOException {
+        Board board = state.getBoard();
+        int count = Protocol.getVarInt(in);
+        for (int i = 0; i < count; i++) {
+            int cell = Protocol.getVarInt(in);
+            int value = in.get();
+            board.setTile(cell / board.getCols(), cell % board.getCols(), (byte) (value & ~SnapshotEncoder.PELLET_BIT));
+            board.setPellet(cell / board.getCols(), cell % board.getCols(), (value & SnapshotEncoder.PELLET_BIT) != 0);
+        }
+    }
+
+    private Direction direction() throws IOException {
+        int ordinal = in.get();
+        if (ordinal < 0 || ordinal >= DIRECTIONS.length) {
+            throw new IOException("corrupt message: unknown direction " + ordinal);
+        }
+        return DIRECTIONS[ordinal];
+    }
+
+    private GameState.Status status() throws IOException {
+        int ordinal = in.get();
+        if (ordinal < 0 || ordinal >= STATUSES.length) {
+            throw new IOException("corrupt message: unknown status " + ordinal);
+        }
+        return STATUSES[ordinal];
+    }
+
+    private void verify(long checksum) {
+        if (checksum != state.checksum()) {
+            mismatches++;
+        }
+    }
+
+    private void write() throws IOException {
+        message.flip();
+        out.clear();
+        Protocol.putFrame(message, out);
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+    }
+
+    /**
+     * plays a session over the network from the command line and reports what the clients received:
+     * [--host H] [--port P] [--session NAME] [--level ID] [--control BOT] [--seed S] [--spectators N].
+     * with --control a bot steers Pacman through its own client, the spectators only watch.
+     * the clients run until the game is over.
+     *
+     * @param args the command line arguments
+     * @throws Exception if a client fails
+     */
+    public static void main(String[] args) throws Exception {
+        String host = "localhost";
+        int port = GameServer.DEFAULT_PORT;
+        String session = "default";
+        String levelId = "levels/level1.txt";
+        String bot = null;
+        long seed = 1;
+        int spectators = 1;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--host": host = args[++i]; break;
+                case "--port": port = Integer.parseInt(args[++i]); break;
+                case "--session": session = args[++i]; break;
+                case "--level": levelId = args[++i]; break;
+                case "--control": bot = args[++i]; break;
+                case "--seed": seed = Long.parseLong(args[++i]); break;
+                case "--spectators": spectators = Integer.parseInt(args[++i]); break;
+                default:
+                    System.err.println("usage: client [--host H] [--port P] [--session NAME] [--level ID]"
+                            + " [--control greedy|random] [--seed S] [--spectators N]");
+                    System.exit(2);
+            }
+        }
+        InetSocketAddress address = new InetSocketAddress(host, port);
+        Controller controller = bot != null ? Controller.create(bot, seed) : null;
+
+        List<GameClient> clients = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        List<Exception> failures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < spectators + (controller != null ? 1 : 0); i++) {
+            GameClient client = new GameClient(address, session, levelId, controller != null && i == 0);
+            clients.add(client);
+            Controller steering = client.hasControl() ? controller : null;
+            Thread thread = new Thread(() -> {
+                try {
+                    play(client, steering);
+                } catch (IOException e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            }, "client-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        for (GameClient client : clients) {
+            GameState state = client.getState();
+            System.out.printf("%-9s %s score %d at tick %d: %d snapshots, %d bytes (%.0f B/s), %d checksum mismatches%n",
+                    client.hasControl() ? "control" : "spectator", state.getStatus(), state.getScore(),
+                    state.getTick(), client.getSnapshots(), client.getBytesReceived(),
+                    client.getBytesReceived() / seconds, client.getMismatches());
+            client.close();
+        }
+        for (Exception failure : failures) {
+            failure.printStackTrace();
+        }
+        long mismatched = clients.stream().mapToLong(GameClient::getMismatches).sum();
+        if (!failures.isEmpty() || mismatched > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * receives snapshots until the game is over, steering Pacman with the controller if there is one.
+     * the controller decides on every snapshot, starting with the FULL one.
+     */
+    private static void play(GameClient client, Controller controller) throws IOException {
+        Direction sent = Direction.NONE;
+        do {
+            if (controller != null) {
+                Direction direction = controller.decide(client.getState());
+                // the server buffers a turn until it can be taken, so a changed mind has to be sent even if
+                // it is the direction Pacman already goes in, or the stale turn is taken later
+                if (direction != Direction.NONE && direction != sent) {
+                    client.send(direction);
+                    sent = direction;
+                }
+            }
+        } while (client.getState().getStatus() == GameState.Status.PLAYING && client.receive());
+    }
+}
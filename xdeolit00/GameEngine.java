@@ -0,0 +1,317 @@
+package xdeolit00;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * this class implements the rules of the game on top of a GameState.
+ * it moves Pacman and the ghosts, collects points and the key, and decides when the game is won or lost.
+ * the engine does not depend on Swing or AWT and never sleeps, so it can be stepped as fast as the
+ * caller wants, e.g. by a headless simulation or by the timers of the GamePanel.
+ */
+class GameEngine {
+    // default movement intervals in ticks, one tick corresponds to 10ms of game time
+    static final int DEFAULT_PACMAN_INTERVAL = 30;
+    static final int DEFAULT_GHOST_INTERVAL = 40;
+    // with at least this many ghosts their decisions are computed on all cores
+    static final int PARALLEL_GHOSTS = 2048;
+
+    private final GameState state;
+    private final FlowField flowField;
+    private int pacmanInterval = DEFAULT_PACMAN_INTERVAL;
+    private int ghostInterval = DEFAULT_GHOST_INTERVAL;
+    private Metrics metrics;
+    private int[] decisions = new int[0]; // the direction each ghost decided on in the current step
+
+    // bookkeeping for the collision phase of the current step
+    private long step = 0;
+    private int stepStartRow, stepStartCol;
+
+    /**
+     * constructs an engine operating on the given game state.
+     *
+     * @param state the state to simulate
+     */
+    GameEngine(GameState state) {
+        this.state = state;
+        this.flowField = new FlowField(state.getBoard());
+    }
+
+    public GameState getState() {
+        return state;
+    }
+
+    /**
+     * gets the number of steps the engine has performed.
+     * a step is a single move phase of Pacman, the ghosts or both, followed by a collision check.
+     *
+     * @return the current step
+     */
+    public long getStep() {
+        return step;
+    }
+
+    public int getPacmanInterval() {
+        return pacmanInterval;
+    }
+
+    public int getGhostInterval() {
+        return ghostInterval;
+    }
+
+    /**
+     * sets how many ticks pass between two moves of Pacman.
+     *
+     * @param ticks the interval in ticks, at least 1
+     */
+    public void setPacmanInterval(int ticks) {
+        pacmanInterval = Math.max(1, ticks);
+    }
+
+    /**
+     * sets how many ticks pass between two moves of the ghosts.
+     *
+     * @param ticks the interval in ticks, at least 1
+     */
+    public void setGhostInterval(int ticks) {
+        ghostInterval = Math.max(1, ticks);
+    }
+
+    /**
+     * makes the engine record how long the ghosts take to move.
+     *
+     * @param metrics the metrics to record to, or null to stop recording
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * advances the game by one tick.
+     * Pacman and the ghosts are moved whenever their movement interval has elapsed,
+     * and a single collision check runs after everything has moved.
+     *
+     * @param input the direction requested by the player, or NONE to keep the current direction
+     */
+    public void tick(Direction input) {
+        if (state.getStatus() != GameState.Status.PLAYING) {
+            return;
+        }
+        steer(input);
+        state.advanceTick();
+        long tick = state.getTick();
+        boolean pacmanTurn = tick % pacmanInterval == 0;
+        boolean ghostTurn = tick % ghostInterval == 0;
+        if (!pacmanTurn && !ghostTurn) {
+            return;
+        }
+        beginStep();
+        if (pacmanTurn) {
+            movePacman();
+        }
+        if (ghostTurn && state.getStatus() == GameState.Status.PLAYING) {
+            moveGhosts();
+        }
+        resolveCollisions();
+    }
+
+    /**
+     * changes the direction Pacman moves in.
+     *
+     * @param input the new direction, NONE leaves the current direction unchanged
+     */
+    public void steer(Direction input) {
+        if (input != Direction.NONE) {
+            state.setDirection(input);
+        }
+    }
+
+    /**
+     * moves Pacman one cell in the current direction and checks for collisions with the ghosts.
+     */
+    public void stepPacman() {
+        if (state.getStatus() != GameState.Status.PLAYING) {
+            return;
+        }
+        beginStep();
+        movePacman();
+        resolveCollisions();
+    }
+
+    /**
+     * changes cells of the running game to how they are on an edited version of its level, e.g. after the level
+     * file was saved. only the given cells are changed, so pellets eaten elsewhere stay eaten, and Pacman,
+     * the ghosts and the score stay as they are. the distance field of the ghosts is only searched again
+     * if a wall was added or removed.
+     * a cell that Pacman or a ghost stands on is never turned into a wall, since he could be walled in and
+     * the ghosts could not find him any more. such a cell is left unchanged and reported instead.
+     *
+     * @param edited the board of the edited level, the same size as the board of the game
+     * @param cells the cells to take over, usually those that were edited, see Board.diff
+     * @param kept called with every cell that was left unchanged because an actor stands on it
+     * @return true if a wall or a gate was added or removed, which changes the routes through the maze
+     */
+    public boolean applyEdit(Board edited, int[] cells, IntConsumer kept) {
+        Board board = state.getBoard();
+        OccupancyGrid occupancy = state.getOccupancy();
+        int cols = board.getCols();
+        boolean walls = false, gates = false;
+        for (int cell : cells) {
+            int row = cell / cols;
+            int col = cell % cols;
+            byte tile = edited.tile(row, col);
+            byte previous = board.tile(row, col);
+            if (tile == Board.WALL && previous != Board.WALL && (!occupancy.isFree(row, col)
+                    || (row == state.getPlayerRow() && col == state.getPlayerCol()))) {
+                kept.accept(cell);
+                continue;
+            }
+            walls |= (previous == Board.WALL) != (tile == Board.WALL);
+            gates |= (previous == Board.GATE) != (tile == Board.GATE);
+            board.setTile(row, col, tile);
+            board.setPellet(row, col, edited.hasPellet(row, col));
+        }
+        if (walls) {
+            flowField.invalidate();
+        }
+        return walls || gates;
+    }
+
+    /**
+     * moves every ghost one cell towards Pacman and checks for collisions with Pacman.
+     */
+    public void stepGhosts() {
+        if (state.getStatus() != GameState.Status.PLAYING) {
+            return;
+        }
+        beginStep();
+        moveGhosts();
+        resolveCollisions();
+    }
+
+    /**
+     * starts a new step by remembering where Pacman stood before anything moved.
+     */
+    private void beginStep() {
+        step++;
+        stepStartRow = state.getPlayerRow();
+        stepStartCol = state.getPlayerCol();
+    }
+
+    /**
+     * handles Pacman's movement and interactions within the game.
+     * it updates Pacman's position based on the current direction and handles special objects like keys, gates, and points.
+     */
+    private void movePacman() {
+        // calculate the cell that Pacman wants to move to
+        Direction direction = state.getDirection();
+        if (direction == Direction.NONE) return;
+        int newRow = state.getPlayerRow() + direction.getRowOffset();
+        int newCol = state.getPlayerCol() + direction.getColOffset();
+
+        // block moves out of the board, into walls, and into the gate before the key has been acquired
+        if (!canEnter(state, newRow, newCol)) {
+            return;
+        }
+        // get the content of the cell that Pacman wants to move to
+        Board board = state.getBoard();
+        byte targetCell = board.tile(newRow, newCol);
+
+        // handle interactions with special objects
+        switch (targetCell) {
+            case Board.KEY:
+                // collect key
+                board.setTile(newRow, newCol, Board.FLOOR);
+                state.collectKey();
+                break;
+            case Board.GATE:
+                // winning condition: pacman reached gate with the key
+                state.setStatus(GameState.Status.WON);
+                return;
+        }
+        if (board.eatPellet(newRow, newCol)) {
+            // collect a point
+            state.addScore(1);
+        }
+
+        // move Pacman to new position
+        state.setPlayerPosition(newRow, newCol);
+    }
+
+    /**
+     * checks if Pacman may move into a cell.
+     *
+     * @param state the game Pacman is in
+     * @param row the row of the cell
+     * @param col the column of the cell
+     * @return false for cells outside the board, walls, and the gate while Pacman has no key
+     */
+    static boolean canEnter(GameState state, int row, int col) {
+        Board board = state.getBoard();
+        if (!board.inBounds(row, col)) {
+            return false;
+        }
+        byte tile = board.tile(row, col);
+        return tile != Board.WALL && (tile != Board.GATE || state.hasKey());
+    }
+
+    /**
+     * moves the ghosts based on their logic defined in Ghost class.
+     * the distance field towards Pacman is brought up to date once and then shared by all ghosts.
+     * every ghost first decides where to go, looking at the positions all ghosts had before any of them moved,
+     * so the decisions do not depend on each other and large numbers of ghosts decide in parallel.
+     * the moves are then committed in the order of the ghost list, and when two ghosts chose the same cell
+     * the first one gets it while the other waits, so the result is the same however the decisions were computed.
+     */
+    private void moveGhosts() {
+        long start = metrics != null ? System.nanoTime() : 0;
+        flowField.update(state.getPlayerRow(), state.getPlayerCol());
+        OccupancyGrid occupancy = state.getOccupancy();
+        List<Ghost> ghosts = state.ghosts();
+        if (decisions.length != ghosts.size()) {
+            decisions = new int[ghosts.size()];
+        }
+
+        if (ghosts.size() >= PARALLEL_GHOSTS) {
+            Arrays.parallelSetAll(decisions, i -> ghosts.get(i).decide(flowField, occupancy));
+        } else {
+            for (int i = 0; i < decisions.length; i++) {
+                decisions[i] = ghosts.get(i).decide(flowField, occupancy);
+            }
+        }
+        for (int i = 0; i < decisions.length; i++) {
+            ghosts.get(i).commit(decisions[i], occupancy, step);
+        }
+        if (metrics != null) {
+            metrics.recordGhosts(start);
+        }
+    }
+
+    /**
+     * checks if Pacman has collided with any ghosts during the current step.
+     * Pacman dies when he shares a cell with a ghost, or when he and a ghost swapped cells
+     * and so passed through each other.
+     */
+    private void resolveCollisions() {
+        if (state.getStatus() != GameState.Status.PLAYING) {
+            return;
+        }
+        int playerRow = state.getPlayerRow();
+        int playerCol = state.getPlayerCol();
+        OccupancyGrid occupancy = state.getOccupancy();
+        boolean collided = !occupancy.isFree(playerRow, playerCol);
+
+        if (!collided && (playerRow != stepStartRow || playerCol != stepStartCol)) {
+            // a ghost now standing where Pacman started is a head-on swap if it came from Pacman's new cell
+            int ghost = occupancy.occupant(stepStartRow, stepStartCol);
+            collided = ghost != OccupancyGrid.EMPTY
+                    && state.ghosts().get(ghost).movedFrom(playerRow, playerCol, step);
+        }
+
+        if (collided) {
+            state.setDirection(Direction.NONE); // stop movement
+            state.setStatus(GameState.Status.LOST);
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package xdeolit00;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.DoubleConsumer;
+
+/**
+ * this class drives the game with a fixed timestep and renders it actively at the display rate.
+ * the loop runs on a thread of its own. every frame it measures how much real time has passed, runs exactly
+ * as many ticks of TICK_MILLIS as fit into it and then renders a frame, passing how far the game has got
+ * towards the next tick so that movement can be interpolated between ticks. late frames therefore do not
+ * slow the game down or change the order of moves, the missed ticks are simply run one after another.
+ * Pacman and the ghosts move at their own rates, which the GameEngine counts in ticks.
+ *
+ * the game state is only touched by the loop thread. other threads, e.g. the listeners on the
+ * Event Dispatch Thread, hand their work to the loop with post, and it runs before the next frame.
+ *
+ * the loop only works while there is something to show. while it is stopped, e.g. before a level is loaded or
+ * after the game is over, a frame is only rendered after a posted command ran or a frame was requested, and
+ * the thread sleeps in between. while it is suspended, e.g. because the window is minimised, it neither ticks
+ * nor renders, and the time it was suspended for does not count towards the game.
+ *
+ * an exception thrown by a command or a frame is printed and the loop goes on. one thrown by a tick is printed
+ * and stops the game, which can then be started again, e.g. by loading a level.
+ */
+class GameLoop {
+    static final int TICK_MILLIS = 10;
+    private static final long TICK_NANOS = TICK_MILLIS * 1_000_000L;
+    // the longest stall that is caught up on, anything beyond is dropped instead of fast-forwarded
+    private static final int MAX_CATCH_UP_TICKS = 50;
+    static final int DEFAULT_FRAME_RATE = 60;
+
+    private final Runnable tick;
+    private final DoubleConsumer frame;
+    private final Metrics metrics;
+    private final ConcurrentLinkedQueue<Runnable> commands = new ConcurrentLinkedQueue<>();
+    private volatile Thread thread;
+    private long frameNanos = 1_000_000_000L / DEFAULT_FRAME_RATE;
+    private volatile boolean frameRequested = true; // the first frame is always rendered
+    private volatile boolean suspended = false;
+
+    // only used on the loop thread
+    private boolean running = false;
+    private long lastTime;
+    private long accumulator;
+
+    /**
+     * constructs a loop that is neither ticking nor rendering yet.
+     *
+     * @param tick the action that advances the game by a single tick
+     * @param frame the action that renders a frame, given the fraction of the next tick that has passed
+     * @param metrics the metrics to record the lateness of the frames to, or null
+     */
+    GameLoop(Runnable tick, DoubleConsumer frame, Metrics metrics) {
+        this.tick = tick;
+        this.frame = frame;
+        this.metrics = metrics;
+    }
+
+    /**
+     * starts the thread that renders frames and runs ticks while the loop is started.
+     *
+     * @param name the name of the thread
+     */
+    public synchronized void launch(String name) {
+        if (thread == null) {
+            thread = new Thread(this::run, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * stops the thread of the loop and waits for it to finish the current frame.
+     */
+    public void shutdown() {
+        Thread stopped;
+        synchronized (this) {
+            stopped = thread;
+            thread = null;
+        }
+        if (stopped != null && stopped != Thread.currentThread()) {
+            LockSupport.unpark(stopped);
+            try {
+                stopped.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * sets how many frames are rendered per second, usually the refresh rate of the display.
+     *
+     * @param framesPerSecond the frame rate, at least 1
+     */
+    public void setFrameRate(int framesPerSecond) {
+        frameNanos = 1_000_000_000L / Math.max(1, framesPerSecond);
+    }
+
+    /**
+     * runs an action on the loop thread before the next frame.
+     * while the thread is not launched, the action is run right away on the calling thread.
+     *
+     * @param command the action to run
+     */
+    public void post(Runnable command) {
+        Thread current = thread;
+        if (current == null || Thread.currentThread() == current) {
+            command.run();
+            frameRequested = true;
+        } else {
+            commands.add(command);
+            LockSupport.unpark(current); // wake the loop if it is idle
+        }
+    }
+
+    /**
+     * asks for a frame to be rendered even if the loop is stopped, e.g. because the panel was uncovered.
+     * may be called from any thread.
+     */
+    public void requestFrame() {
+        frameRequested = true;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * suspends or resumes ticking and rendering, e.g. while the window is minimised. may be called from any thread.
+     * ticks that would have been due while the loop was suspended are not run when it resumes.
+     *
+     * @param suspended true to suspend the loop, false to resume it
+     */
+    public void setSuspended(boolean suspended) {
+        this.suspended = suspended;
+        if (!suspended) {
+            frameRequested = true;
+        }
+        LockSupport.unpark(thread);
+    }
+
+    public boolean isSuspended() {
+        return suspended;
+    }
+
+    /**
+     * starts running ticks, measuring time from now on. must be called on the loop thread.
+     */
+    public void start() {
+        lastTime = System.nanoTime();
+        accumulator = 0;
+        running = true;
+        frameRequested = true;
+    }
+
+    /**
+     * stops running ticks, frames are still rendered. a tick that is currently running is finished,
+     * but no more are started. must be called on the loop thread.
+     */
+    public void stop() {
+        running = false;
+        accumulator = 0;
+        frameRequested = true; // show the state the game stopped in
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * the body of the loop thread: run the posted commands and the due ticks, render, and wait for the next frame.
+     * while there is nothing to do the thread sleeps until it is woken by post, requestFrame or setSuspended.
+     */
+    private void run() {
+        long nextFrame = System.nanoTime();
+        while (thread == Thread.currentThread()) {
+            if (suspended || (!running && !frameRequested && commands.isEmpty())) {
+                LockSupport.park(this);
+                // time spent idle is neither late nor part of the game
+                nextFrame = System.nanoTime();
+                lastTime = nextFrame;
+                continue;
+            }
+            long now = System.nanoTime();
+            if (metrics != null) {
+                metrics.recordFrame(now - nextFrame);
+            }
+            for (Runnable command = commands.poll(); command != null; command = commands.poll()) {
+                try {
+                    command.run();
+                } catch (RuntimeException e) {
+                    e.printStackTrace(); // the other commands and the game go on
+                }
+                frameRequested = true; // the command may have changed what is shown
+            }
+            if (running) {
+                advance(now);
+            }
+            if (running || frameRequested) {
+                frameRequested = false;
+                try {
+                    frame.accept(running ? (double) accumulator / TICK_NANOS : 0);
+                } catch (RuntimeException e) {
+                    e.printStackTrace(); // e.g. the buffer strategy was lost as the window closes
+                }
+            }
+
+            // schedule the next frame, skipping frames that could not be rendered in time
+            nextFrame += frameNanos;
+            now = System.nanoTime();
+            if (nextFrame < now - frameNanos) {
+                nextFrame = now;
+            }
+            while (now < nextFrame && thread == Thread.currentThread()) {
+                LockSupport.parkNanos(nextFrame - now);
+                now = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * runs all ticks that have become due up to the given time.
+     *
+     * @param now the current time in nanoseconds, as returned by System.nanoTime
+     * @return the number of ticks that were run
+     */
+    int advance(long now) {
+        accumulator += now - lastTime;
+        lastTime = now;
+
+        long due = accumulator / TICK_NANOS;
+        if (due > MAX_CATCH_UP_TICKS) {
+            // after a long stall (e.g. a modal dialog or a debugger) resume instead of racing ahead
+            due = MAX_CATCH_UP_TICKS;
+            accumulator = 0;
+        } else {
+            accumulator -= due * TICK_NANOS;
+        }
+
+        int ran = 0;
+        while (ran < due && running) {
+            try {
+                tick.run();
+            } catch (RuntimeException e) {
+                // the state may be half updated, so stop the game where it is instead of running more ticks on it
+                e.printStackTrace();
+                stop();
+                break;
+            }
+            ran++;
+        }
+        return ran;
+    }
+}
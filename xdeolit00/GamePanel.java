@@ -2,40 +2,96 @@ package xdeolit00;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.HierarchyEvent;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.awt.event.WindowStateListener;
+import java.awt.image.BufferStrategy;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
 
 /**
- * this class handles the game logic and rendering for the game.
- * it controls the game flow, Pacman and ghost movement, score, collision detection,
- * and the rendering of the game board and its elements.
+ * this class renders the game and forwards user input to it.
+ * the game rules live in the GameEngine, the panel only drives it with its GameLoop,
+ * draws the GameState and reports when the game is won or lost.
+ *
+ * the panel is a heavyweight canvas that is rendered actively: the loop thread draws every frame into a
+ * BufferStrategy and flips it onto the screen at the refresh rate of the display, independently of the rate
+ * of the game ticks. Pacman and the ghosts are drawn between the cells they are moving between,
+ * so they glide from cell to cell instead of jumping. a frame that would look exactly like the previous one
+ * is skipped, and the loop sleeps while no game runs and is suspended while the window is minimised or hidden.
+ * the game state belongs to the loop thread, the listeners on the Event Dispatch Thread post their input to it.
  */
-class GamePanel extends JPanel {
+class GamePanel extends Canvas {
     // game setup variables
-    private static int gameSpeed = 300; // executes stepGame every 300ms
-    private static final int GHOST_MOVE_SPEED = 400; // executes moveGHosts every 500ms
-    private char[][] board;
-    private int rows, cols;
-    private Timer gameTimer;
-
-    private Image pacman;
-    private final Image initialPacman, ghostImg, key, gate, dead, wall;
+    private int gameSpeed = 300; // pacman moves every 300ms
+    private static final int GHOST_MOVE_SPEED = 400; // ghosts move every 400ms
+    private GameState state;
+    private GameEngine engine;
+    private Level level; // the level the game was started on, null during a replay
+    private LevelWatcher watcher; // set in watch mode, the level of the game is reloaded whenever its file is saved
+    private int[] keptEdits = new int[0]; // edited cells that could not be applied yet, see applyEdit
+    private final GameLoop loop;
+
+    private final CompletableFuture<SpriteCache> assets; // decoded in the background, see SpriteCache.preload
+    private SpriteCache sprites; // null until the images are decoded
+    private SpriteCache.Sprite pacman; // the image shown for Pacman, null once he has left through the gate
 
     // pacman control variables
-    private int playerRow, playerCol;
-    private int directionRow = 0, directionCol = 0;
-    private boolean hasKey = false;
-    private int score = 0;
-
-    private final List<Ghost> ghosts;  // list to store ghosts
-    private Timer ghostTimer;
+    private final InputBuffer input = new InputBuffer(); // turns are buffered until Pacman can take them
+
+    // every game is recorded and saved to this directory when it ends, an empty path turns recording off
+    private static final String RECORDINGS_DIR = System.getProperty("pacman.recordings", "recordings");
+    private Recording recording;
+    private Replay replay; // set while a recording is replayed instead of a game being played
+    private double replaySpeed = 1;
+    private double replayTicks; // recorded ticks owed to the replay, fractions carry over between loop ticks
+
+    // the last seconds of the game, to rewind with backspace, and the state saved with F5 and loaded with F9
+    private static final int REWIND_CAPACITY = 1000; // ticks
+    private static final int REWIND_TICKS = 100; // how far a single press of backspace goes back
+    private final RewindBuffer rewind = new RewindBuffer(REWIND_CAPACITY);
+    private GameSnapshot quickSave;
+
+    // the result of every game that is won or lost is stored in this file, an empty path turns storing off
+    private static final String RESULTS_FILE = System.getProperty("pacman.results", "results.pacres");
+    private ResultStore results; // opened when the first level is loaded
+    private String levelId; // the level of the current game
+    private boolean ranked; // false for replays and once the game was rewound, their results are not stored
+    private int best = -1; // the highest score stored for the level, -1 if there is none
+
+    // rendering caches
+    private static final Font SCORE_FONT = new Font("Comic Sans", Font.BOLD, 20);
+    private static final int MIN_FIELD_SIZE = 24; // large boards scroll instead of shrinking below this
+    private StaticLayer staticLayer; // walls and gates, rendered in chunks as they become visible
+    private final Rectangle view = new Rectangle(); // the visible part of the board, in pixels
+
+    // where the actors came from, to draw them between two cells while they move
+    private int pacmanFromRow, pacmanFromCol;
+    private long pacmanMoveTick = Long.MIN_VALUE; // the tick in which Pacman last moved
+    private long ghostMoveTick = Long.MIN_VALUE; // the tick in which the ghosts last moved
+    private long ghostMoveStep = -1; // and the step of the engine in which they did
+
+    // performance metrics, shown next to the score with F3 and written to METRICS_FILE when the game exits
+    private static final String METRICS_FILE = System.getProperty("pacman.metrics", "metrics.txt");
+    private static final Font METRICS_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+    private static final long METRICS_REFRESH_NANOS = 500_000_000L;
+    private final Metrics metrics = new Metrics();
+    private boolean showMetrics = false;
+    private String metricsText = "";
+    private long metricsTextAt;
+
+    // what the frame on screen shows, see sceneKey, and whether it has to be rendered again anyway
+    private long shownScene;
+    private volatile boolean redraw = true;
+    private Window window; // the window the panel is shown in, watched for being minimised
+    private final WindowStateListener windowState = e -> updateSuspended();
 
     /**
      * constructs the GamePanel and initialises necessary resources.
@@ -43,36 +99,60 @@ class GamePanel extends JPanel {
     public GamePanel() {
         setPreferredSize(new Dimension(600, 600));
         setBackground(Color.BLACK);
-        initialPacman = new ImageIcon(getClass().getClassLoader().getResource("images/pacman.png")).getImage();
-        ghostImg = new ImageIcon(getClass().getClassLoader().getResource("images/ghost.gif")).getImage();
-        key = new ImageIcon(getClass().getClassLoader().getResource("images/key.png")).getImage();
-        gate = new ImageIcon(getClass().getClassLoader().getResource("images/gate.png")).getImage();
-        dead = new ImageIcon(getClass().getClassLoader().getResource("images/dead.png")).getImage();
-        wall = new ImageIcon(getClass().getClassLoader().getResource("images/wall.png")).getImage();
-        pacman = initialPacman;
-        ghosts = new ArrayList<>();
-
-        // initialise timer for ghost movement (this is to separate pacman movement from ghost movement)
-        ghostTimer = new Timer(GHOST_MOVE_SPEED, e -> moveGhosts());
-        ghostTimer.start();
+        setFocusable(true);
+        assets = SpriteCache.preload(); // usually started by PacmanGame already, the panel does not wait for it
+        pacman = SpriteCache.Sprite.PACMAN;
+
+        // a single loop runs and renders the game, it starts rendering once the panel is shown
+        loop = new GameLoop(this::tick, this::frame, metrics);
+        assets.thenRun(this::redraw); // the board is left out of the frames until the images are decoded
+
+        // the loop does not need to run while the panel cannot be seen
+        addHierarchyListener(e -> {
+            if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0) {
+                updateSuspended();
+            }
+        });
+
+        // write the metrics when the application exits, whichever way it does
+        if (!METRICS_FILE.isEmpty()) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    metrics.dump(Path.of(METRICS_FILE));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }));
+        }
 
         // listener for user commands (up down left right arrow keys)
         addKeyListener(new KeyAdapter() {
             @Override
             public void keyPressed(KeyEvent e) {
+                long now = System.nanoTime();
                 switch (e.getKeyCode()) {
                     case KeyEvent.VK_UP:
-                        directionRow = -1;
-                        directionCol = 0; break;
+                        loop.post(() -> input.press(Direction.UP, now)); break;
                     case KeyEvent.VK_DOWN:
-                        directionRow = 1;
-                        directionCol = 0; break;
+                        loop.post(() -> input.press(Direction.DOWN, now)); break;
                     case KeyEvent.VK_LEFT:
-                        directionRow = 0;
-                        directionCol = -1; break;
+                        loop.post(() -> input.press(Direction.LEFT, now)); break;
                     case KeyEvent.VK_RIGHT:
-                        directionRow = 0;
-                        directionCol = 1; break;
+                        loop.post(() -> input.press(Direction.RIGHT, now)); break;
+                    case KeyEvent.VK_F3:
+                        loop.post(() -> showMetrics = !showMetrics); break; // toggle the metrics overlay
+                    case KeyEvent.VK_BACK_SPACE:
+                        loop.post(() -> restore(rewind.rewind(REWIND_TICKS))); break;
+                    case KeyEvent.VK_F5:
+                        loop.post(() -> quickSave = state != null && replay == null ? state.snapshot() : null); break;
+                    case KeyEvent.VK_F9:
+                        loop.post(() -> {
+                            if (restore(quickSave)) {
+                                rewind.clear(); // the rewound ticks belong to a different course of the game
+                                rewind.record(state);
+                            }
+                        });
+                        break;
                 }
             }
         });
@@ -81,271 +161,766 @@ class GamePanel extends JPanel {
         addMouseMotionListener(new MouseAdapter() {
             @Override
             public void mouseMoved(MouseEvent e) {
-                // check if the board is initialised properly
-                if (rows == 0 || cols == 0 || getWidth() == 0 || getHeight() == 0) {
-                    return; // avoid division by zero
-                }
+                long now = System.nanoTime();
+                int x = e.getX();
+                int y = e.getY();
+                loop.post(() -> pointAt(x, y, now));
+            }
+        });
 
-                // calculate the cell width and height based on the panel's size
-                int cellWidth = getWidth() / cols;
-                int cellHeight = getHeight() / rows;
-
-                // get the mouse position relative to the panel
-                int mouseX = e.getX();
-                int mouseY = e.getY();
-
-                // determine the row and column of the mouse's position
-                int targetRow = mouseY / cellHeight;
-                int targetCol = mouseX / cellWidth;
-
-                // check if the mouse is within bounds of the board
-                if (targetRow >= 0 && targetRow < rows && targetCol >= 0 && targetCol < cols) {
-                    // calculate the direction to move towards the target cell
-                    int deltaRow = targetRow - playerRow;
-                    int deltaCol = targetCol - playerCol;
-
-                    // normalise the direction to have a maximum step size of 1
-                    if (Math.abs(deltaRow) > Math.abs(deltaCol)) {
-                        directionRow = deltaRow > 0 ? 1 : -1;
-                        directionCol = 0; // move vertically
-                    } else if (Math.abs(deltaCol) > Math.abs(deltaRow)) {
-                        directionCol = deltaCol > 0 ? 1 : -1;
-                        directionRow = 0; // move horizontally
-                    } else {
-                        // move diagonally
-                        directionRow = deltaRow > 0 ? 1 : -1;
-                        directionCol = deltaCol > 0 ? 1 : -1;
-                    }
-                }
+        // a click walks Pacman to the clicked cell along the shortest route
+        addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                long now = System.nanoTime();
+                int x = e.getX();
+                int y = e.getY();
+                loop.post(() -> clickAt(x, y, now));
             }
         });
     }
 
     /**
-     * loads the game level by reading the specified file.
-     * parses the level layout and initialises Pacman, ghosts, and other elements.
+     * starts rendering as soon as the panel can be shown on the screen.
+     */
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        createBufferStrategy(2); // page flipping where the display supports it
+        int refreshRate = getGraphicsConfiguration().getDevice().getDisplayMode().getRefreshRate();
+        loop.setFrameRate(refreshRate == DisplayMode.REFRESH_RATE_UNKNOWN ? GameLoop.DEFAULT_FRAME_RATE : refreshRate);
+        loop.launch("game-loop");
+        window = SwingUtilities.getWindowAncestor(this);
+        if (window != null) {
+            window.addWindowStateListener(windowState);
+        }
+        updateSuspended();
+    }
+
+    /**
+     * stops rendering before the panel is taken off the screen.
+     */
+    @Override
+    public void removeNotify() {
+        loop.shutdown();
+        closeResults();
+        if (window != null) {
+            window.removeWindowStateListener(windowState);
+            window = null;
+        }
+        super.removeNotify();
+    }
+
+    /**
+     * the panel paints nothing itself, when AWT asks for it, e.g. because the panel was uncovered or resized,
+     * the loop is asked to render a frame.
      *
-     * @param filePath The path to the level file.
-     */public void loadLevel(String filePath) {
-        // parse file's information
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            String[] dimensions = reader.readLine().trim().split(" ");
-            rows = Integer.parseInt(dimensions[0]);
-            cols = Integer.parseInt(dimensions[1]);
-            board = new char[rows][cols];
-
-            resetGame(); // ensures when a level button is pressed all variables are reset and window is repainted
-
-            // render pacman and ghosts
-            for (int i = 0; i < rows; i++) {
-                String line = reader.readLine().trim();
-                board[i] = line.toCharArray();
-                for (int j = 0; j < cols; j++) {
-                    switch (board[i][j]){
-                        case 'P':
-                            // set Pacman's initial position
-                            playerRow = i;
-                            playerCol = j; break;
-                        case 'C':
-                            ghosts.add(new Ghost(i, j, board, this)); break; // add each encountered ghost to the list
-                    }
+     * @param g the graphics AWT would have the panel paint with, unused
+     */
+    @Override
+    public void paint(Graphics g) {
+        redraw();
+    }
+
+    @Override
+    public void update(Graphics g) {
+        redraw(); // without clearing the panel first, which would flicker
+    }
+
+    /**
+     * makes the loop render the next frame, even if it would look like the one on screen.
+     */
+    private void redraw() {
+        redraw = true;
+        loop.requestFrame();
+    }
+
+    /**
+     * suspends the loop while the panel is not on screen or its window is minimised, and resumes it otherwise.
+     * called on the Event Dispatch Thread.
+     */
+    private void updateSuspended() {
+        boolean minimised = window instanceof Frame && (((Frame) window).getExtendedState() & Frame.ICONIFIED) != 0;
+        loop.setSuspended(!isShowing() || minimised);
+    }
+
+    /**
+     * loads the game level and starts a new game on it.
+     * levels are cached by the LevelLoader, so loading a level again only copies its board. generated mazes are
+     * not cached, every click on the maze button generates another one and they would never be freed.
+     *
+     * @param levelId the file path or classpath resource of the level
+     */
+    public void loadLevel(String levelId) {
+        loop.post(() -> {
+            try {
+                Level level = levelId.startsWith(MazeGenerator.PREFIX)
+                        ? LevelLoader.read(levelId) : LevelLoader.load(levelId);
+
+                saveRecording(); // keep the game that is abandoned
+                resetGame(); // ensures when a level button is pressed all variables are reset
+                state = new GameState(level);
+                engine = new GameEngine(state);
+                this.level = level;
+                this.levelId = levelId;
+                watch(levelId);
+                ranked = true;
+                best = bestScore(levelId);
+                input.setNavigation(level.getNavigation());
+                engine.setPacmanInterval(gameSpeed / GameLoop.TICK_MILLIS);
+                engine.setGhostInterval(GHOST_MOVE_SPEED / GameLoop.TICK_MILLIS);
+                recording = new Recording(levelId, 0, gameSpeed / GameLoop.TICK_MILLIS,
+                        GHOST_MOVE_SPEED / GameLoop.TICK_MILLIS, Recording.DEFAULT_CHECKSUM_INTERVAL);
+                rewind.record(state);
+                start();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * turns on watch mode: from now on the file of the level being played is watched, and whenever it is saved
+     * the edited cells are applied to the running game, see applyEdit. meant for designing levels.
+     */
+    public void watchLevels() {
+        loop.post(() -> {
+            if (watcher == null) {
+                try {
+                    // the file is read on the thread of the watcher, only the edit is applied on the loop thread
+                    watcher = new LevelWatcher(this::reloadLevel);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return;
                 }
             }
-            // create a new timer
-            if (gameTimer != null) {
-                gameTimer.stop();
+            if (levelId != null && level != null) {
+                watch(levelId);
+            }
+        });
+    }
+
+    /**
+     * replays a recorded game instead of playing one. the input of the player is ignored during the replay.
+     *
+     * @param recording the game to replay
+     * @param speed how many times faster than the recorded game the replay runs
+     */
+    public void replay(Recording recording, double speed) {
+        loop.post(() -> {
+            try {
+                Replay replay = new Replay(recording);
+
+                saveRecording();
+                resetGame();
+                this.replay = replay;
+                levelId = recording.getLevelId();
+                best = bestScore(levelId);
+                replaySpeed = speed;
+                state = replay.getState();
+                engine = replay.getEngine();
+                start();
+            } catch (IOException e) {
+                e.printStackTrace();
             }
-            gameTimer = new Timer(gameSpeed, e -> stepGame());
-            gameTimer.start();
+        });
+    }
 
-            // create a new ghost timer
-            if (ghostTimer != null) {
-                ghostTimer.stop();
+    /**
+     * makes the watcher watch the level of the game, in watch mode.
+     */
+    private void watch(String levelId) {
+        if (watcher == null) {
+            return;
+        }
+        try {
+            if (!watcher.watch(levelId)) {
+                System.err.println("cannot watch " + levelId + ", it is not a file");
             }
-            ghostTimer = new Timer(GHOST_MOVE_SPEED, e -> moveGhosts());
-            ghostTimer.start();
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * reads a level again after its file was saved and hands it to the loop. called on the thread of the watcher.
+     */
+    private void reloadLevel(String levelId) {
+        try {
+            Level edited = LevelLoader.reload(levelId);
+            loop.post(() -> applyEdit(levelId, edited));
+        } catch (IOException e) {
+            e.printStackTrace(); // e.g. saved halfway, the game goes on with the level as it was
+        }
+    }
+
+    /**
+     * applies the cells that were edited in the file of the level to the running game, which goes on where it was.
+     * only the cells in which the edited level differs from the level the game was started on are changed,
+     * so eaten pellets stay eaten unless their cell was edited, and Pacman, the ghosts and the score are kept.
+     * a wall drawn onto the cell of Pacman or a ghost is not applied yet: the cell keeps its old tile, is reported,
+     * and is tried again whenever the level is saved the next time, by when the actor has usually moved on.
+     * the chunks of the static layer and the route of click-to-move are only redone where walls or gates changed.
+     * while cells are kept, click-to-move routes on a graph of the board as it is played, built for this game alone,
+     * instead of the shared graph of the edited level, which would lead through the walls that were not applied.
+     * the game is neither recorded, rewound nor stored as a result afterwards, since it no longer follows from
+     * its inputs on one level. a level whose size changed is started over instead.
+     *
+     * @param levelId the level that was edited
+     * @param edited the edited level
+     */
+    private void applyEdit(String levelId, Level edited) {
+        if (level == null || engine == null || !levelId.equals(this.levelId)) {
+            return; // another level was loaded in the meantime
+        }
+        if (edited.getRows() != level.getRows() || edited.getCols() != level.getCols()) {
+            loadLevel(levelId);
+            return;
+        }
+        int[] cells = level.getBoard().diff(edited.getBoard());
+        if (keptEdits.length > 0) {
+            cells = IntStream.concat(Arrays.stream(cells), Arrays.stream(keptEdits)).distinct().toArray();
+        }
+        level = edited;
+        if (cells.length == 0) {
+            return;
+        }
+        saveRecording();
+        ranked = false;
+        rewind.clear(); // the snapshots would bring back the level as it was
+        quickSave = null;
+        rewind.record(state);
+        IntStream.Builder kept = IntStream.builder();
+        boolean layoutChanged = engine.applyEdit(edited.getBoard(), cells, cell -> {
+            System.err.println("not walling up row " + cell / edited.getCols() + ", column " + cell % edited.getCols()
+                    + " of " + levelId + " yet, an actor stands there");
+            kept.add(cell);
+        });
+        keptEdits = kept.build().toArray();
+        if (layoutChanged) {
+            input.setNavigation(keptEdits.length == 0 ? edited.getNavigation()
+                    : new NavigationGraph(state.getBoard().snapshot()));
+            if (staticLayer != null) {
+                int cols = edited.getCols();
+                for (int cell : cells) {
+                    staticLayer.invalidateCell(cell / cols, cell % cols);
+                }
+            }
+        }
+        redraw = true;
+    }
+
+    /**
+     * prepares the new game and restarts the game loop for it.
+     */
+    private void start() {
+        redraw = true;
+        engine.setMetrics(metrics);
+        if (staticLayer != null) {
+            staticLayer.invalidate(); // the walls and gates of the new level have to be drawn again
+        }
+        pacmanFromRow = state.getPlayerRow();
+        pacmanFromCol = state.getPlayerCol();
+        pacmanMoveTick = Long.MIN_VALUE;
+        ghostMoveTick = Long.MIN_VALUE;
+        ghostMoveStep = -1;
+        loop.stop();
+        loop.start();
+    }
+
+    /**
+     * stops the game loop, leaving the current game on screen.
+     */
+    void stopGame() {
+        loop.post(loop::stop);
+    }
+
     // method to dynamically change game speed based on user input (via slider)
     /**
-     * sets the game speed, which controls how often Pacman's stepGame method is executed.
+     * sets the game speed, which controls how often Pacman moves.
+     * the change takes effect immediately, also in a running game.
      *
      * @param speed the new game speed in milliseconds
      */
-    public static void setGameSpeed(int speed) {
-        gameSpeed = speed;
-    }
-
-    /**
-     * handles Pacman's movement and interactions within the game.
-     * it updates Pacman's position based on the current direction and handles special objects like keys, gates, and points.
-     */
-    private void stepGame() {
-        // calculate the cell that Pacman wants to move to
-        if (directionRow == 0 && directionCol == 0) return;
-        int newRow = playerRow + directionRow;
-        int newCol = playerCol + directionCol;
-
-        // check that move is within boundaries of board
-        if (newRow >= 0 && newRow < rows && newCol >= 0 && newCol < cols) {
-            // get the content of the cell that Pacman wants to move to
-            char targetCell = board[newRow][newCol];
-
-            // if it is a wall or gate and key has not been acquired, block the move
-            if (targetCell == 'W' || (targetCell == 'G' && !hasKey)) return;
-
-            // handle interactions with special objects
-            switch (targetCell) {
-                case 'o':
-                    // collect a point
-                    score++;
-                    break;
-                case 'K':
-                    // collect key
-                    hasKey = true;
-                    break;
-                case 'G':
-                    // winning condition: pacman reached gate with the key
-                    pacman = null; // pacman disappears
-                    repaint();
-                    ghostTimer.stop();
-                    gameTimer.stop(); // stop the game loop
-                    JOptionPane.showMessageDialog(this, "You win!");
-                    return;
+    public void setGameSpeed(int speed) {
+        loop.post(() -> {
+            gameSpeed = speed;
+            if (engine != null && replay == null) {
+                engine.setPacmanInterval(speed / GameLoop.TICK_MILLIS);
+                if (recording != null) {
+                    recording.recordPacmanInterval(speed / GameLoop.TICK_MILLIS);
+                }
             }
+        });
+    }
 
-            // move Pacman to new position
-            board[playerRow][playerCol] = '.';  // clear old position
-            playerRow = newRow;
-            playerCol = newCol;
-            board[playerRow][playerCol] = 'P'; // update Pacman position
-            repaint();
-
+    /**
+     * advances the game by a single tick of the game loop.
+     * a replay runs as many recorded ticks instead as its speed asks for.
+     */
+    private void tick() {
+        if (replay == null) {
+            runTick();
+            return;
+        }
+        replayTicks += replaySpeed;
+        while (replayTicks >= 1 && loop.isRunning()) {
+            replayTicks--;
+            if (!replay.hasNext()) {
+                loop.stop();
+                long divergedAt = replay.getDivergedAt();
+                if (divergedAt != -1) {
+                    SwingUtilities.invokeLater(() ->
+                            JOptionPane.showMessageDialog(this, "The replay diverged after tick " + divergedAt));
+                }
+                break;
+            }
+            runTick();
         }
     }
 
     /**
-     * checks if Pacman has collided with any ghosts.
-     * if a collision is detected, it ends the game.
-     *
-     * @param row the row position to check for collisions
-     * @param col the column position to check for collisions
-     */
-    public void checkCollision(int row, int col) {
-        for (Ghost ghost : ghosts) {
-            if (ghost.getRow() == row && ghost.getCol() == col) {
-                pacman = dead; // display dead pacman image
-                playerRow = playerCol = -1; // reset position
-                directionCol = directionRow = 0; // stop movement
-                JOptionPane.showMessageDialog(this, "You died!");
-                return;
+     * runs a single tick of the game or the replay and remembers where the actors that moved came from.
+     */
+    private void runTick() {
+        long step = engine.getStep();
+        int oldRow = state.getPlayerRow();
+        int oldCol = state.getPlayerCol();
+        long start = System.nanoTime();
+        if (replay != null) {
+            replay.step();
+        } else {
+            Direction next = input.poll(state);
+            engine.tick(next);
+            if (recording != null) {
+                recording.record(next, state);
+            }
+            rewind.record(state);
+        }
+        if (engine.getStep() == step) {
+            return; // nothing moved in this tick
+        }
+        metrics.recordTick(start, state.getTick());
+
+        if (oldRow != state.getPlayerRow() || oldCol != state.getPlayerCol()) {
+            long latency = input.moved(state, System.nanoTime());
+            if (latency >= 0) {
+                metrics.recordInput(latency);
             }
+            pacmanFromRow = oldRow;
+            pacmanFromCol = oldCol;
+            pacmanMoveTick = state.getTick();
+        }
+        if (state.getTick() % engine.getGhostInterval() == 0) {
+            ghostMoveTick = state.getTick();
+            ghostMoveStep = engine.getStep();
+        }
+        afterStep();
+    }
 
+    /**
+     * announces the end of the game once the engine reports that it was won or lost.
+     */
+    private void afterStep() {
+        switch (state.getStatus()) {
+            case WON:
+                pacman = null; // pacman disappears
+                loop.stop();
+                saveRecording();
+                storeResult();
+                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this, "You win!"));
+                break;
+            case LOST:
+                pacman = SpriteCache.Sprite.DEAD; // display dead pacman image
+                input.clear();
+                loop.stop();
+                saveRecording();
+                storeResult();
+                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this, "You died!"));
+                break;
         }
+    }
 
+    /**
+     * puts the game back into an earlier state and continues it from there.
+     * the recording of the game ends with the rewind, since the game no longer follows from its inputs.
+     *
+     * @param snapshot the state to go back to, or null to do nothing
+     * @return true if the game was restored
+     */
+    private boolean restore(GameSnapshot snapshot) {
+        if (snapshot == null || state == null || replay != null) {
+            return false;
+        }
+        saveRecording();
+        ranked = false;
+        state.restore(snapshot);
+        input.clear();
+        switch (state.getStatus()) {
+            case WON: pacman = null; break;
+            case LOST: pacman = SpriteCache.Sprite.DEAD; break;
+            default: pacman = SpriteCache.Sprite.PACMAN;
+        }
+        start();
+        return true;
     }
 
     /**
-     * moves the ghosts based on their logic defined in Ghost class
+     * turns a mouse position into the cell it points at and hands it to the input buffer.
      */
-        private void moveGhosts() {
-        for (Ghost ghost : ghosts) {
-            ghost.move(playerRow, playerCol, ghosts); // pass Pacman's position to the ghost
+    private void pointAt(int x, int y, long nanos) {
+        int cell = cellAt(x, y);
+        if (cell >= 0) {
+            // only the last cell before the next tick counts, it is turned into a direction there
+            input.point(cell / state.getCols(), cell % state.getCols(), nanos);
         }
-        repaint();  // redraw the screen after the ghosts move
     }
 
+    /**
+     * turns the position of a click into the cell it points at and makes it Pacman's destination.
+     */
+    private void clickAt(int x, int y, long nanos) {
+        int cell = cellAt(x, y);
+        if (cell >= 0 && replay == null) {
+            input.moveTo(cell / state.getCols(), cell % state.getCols(), nanos);
+        }
+    }
 
+    /**
+     * finds the cell of the board under a position on the panel.
+     *
+     * @return the index of the cell, row * cols + col, or -1 if the position is not on the board
+     */
+    private int cellAt(int x, int y) {
+        // check if the board is initialised properly
+        int fieldSize = fieldSize();
+        if (fieldSize == 0) {
+            return -1; // avoid division by zero
+        }
 
+        // determine the row and column of the mouse's position relative to the board
+        int targetRow = (y + view.y) / fieldSize;
+        int targetCol = (x + view.x) / fieldSize;
 
+        // check if the mouse is within bounds of the board
+        if (targetRow >= 0 && targetRow < state.getRows() && targetCol >= 0 && targetCol < state.getCols()) {
+            return targetRow * state.getCols() + targetCol;
+        }
+        return -1;
+    }
 
     /**
-     * paints the game components to the screen, including Pacman, ghosts, walls, and points.
+     * renders a frame into the buffer strategy and shows it. called by the loop thread.
      *
-     * @param g the Graphics object used to render the game components
+     * @param alpha the fraction of the next tick that has already passed
      */
-    @Override
-    protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
-
-        if (board != null) { // check if board is initialised
-            // determine size of each cell based on panel's dimensions and board size
-            int fieldSize = Math.min(getWidth() / cols, getHeight() / rows);
-
-            // vars for image rendering
-            int imageSize, imageX, imageY;
-
-            // iterate through each cell of the game board
-            for (int row = 0; row < rows; row++) {
-                for (int col = 0; col < cols; col++) {
-                    char field = board[row][col]; // get content of cell
-                    // render each cell based on its contents
-                    switch (field) {
-                        case 'W': // wall
-                            imageSize = fieldSize;
-                            imageX = col * fieldSize;
-                            imageY = row * fieldSize;
-                            g.drawImage(wall, imageX, imageY, imageSize, imageSize, this);
-                            break;
-                        case 'G': // gate
-                            imageSize = fieldSize;
-                            imageX = col * fieldSize;
-                            imageY = row * fieldSize;
-                            g.drawImage(gate, imageX, imageY, imageSize, imageSize, this);
-                            break;
-                        case '.': // empty field
-                            g.setColor(Color.BLACK);
-                            g.fillRect(col * fieldSize, row * fieldSize, fieldSize, fieldSize);
-                            break;
-                        case 'P': // pacman
-                            imageSize = (int) (fieldSize * 0.5);
-                            imageX = col * fieldSize + (fieldSize - imageSize) / 2;
-                            imageY = row * fieldSize + (fieldSize - imageSize) / 2;
-                            g.drawImage(pacman, imageX, imageY, imageSize, imageSize, this);
-                            break;
-                        case 'K': // key
-                            imageSize = (int) (fieldSize * 0.5);
-                            imageX = col * fieldSize + (fieldSize - imageSize) / 2;
-                            imageY = row * fieldSize + (fieldSize - imageSize) / 2;
-                            g.drawImage(key, imageX, imageY, imageSize, imageSize, this);
-                            break;
-                        case 'o': // point
-                            g.setColor(Color.WHITE);
-                            int pointSize = fieldSize / 10; //
-                            int pointX = col * fieldSize + (fieldSize - pointSize) / 2;
-                            int pointY = row * fieldSize + (fieldSize - pointSize) / 2;
-                            g.fillOval(pointX, pointY, pointSize, pointSize);
-                            break;
-                        }
+    private void frame(double alpha) {
+        BufferStrategy strategy = getBufferStrategy();
+        if (strategy == null || getWidth() <= 0 || getHeight() <= 0) {
+            return;
+        }
+        long scene = sceneKey(alpha);
+        if (scene == shownScene && !redraw && !showMetrics) {
+            return; // nothing visible changed since the last frame
+        }
+        shownScene = scene;
+        redraw = false;
+        // the contents of the buffers can be lost at any time, e.g. when the display mode changes
+        do {
+            do {
+                Graphics2D g = (Graphics2D) strategy.getDrawGraphics();
+                try {
+                    render(g, alpha);
+                } finally {
+                    g.dispose();
+                }
+            } while (strategy.contentsRestored());
+            strategy.show();
+        } while (strategy.contentsLost());
+        Toolkit.getDefaultToolkit().sync();
+    }
+
+    /**
+     * renders the game, including Pacman, ghosts, walls, and points.
+     * walls and gates are copied from the cached static layer, everything else is only drawn
+     * for the cells in view. boards that do not fit the panel are scrolled so that Pacman stays in view.
+     * the board is left out until the images have been decoded.
+     *
+     * @param g the graphics to render to, covering the whole panel
+     * @param alpha the fraction of the next tick that has already passed, used to place moving actors
+     */
+    void render(Graphics2D g, double alpha) {
+        long start = System.nanoTime();
+        int cells = 0;
+        g.setColor(Color.BLACK);
+        g.fillRect(0, 0, getWidth(), getHeight());
+
+        if (sprites == null && assets.isDone()) {
+            sprites = assets.join();
+            staticLayer = new StaticLayer(sprites);
+        }
+        int fieldSize = fieldSize();
+        if (fieldSize > 0 && sprites != null) { // check if board and images are initialised
+            Board board = state.getBoard();
+            double time = gameTime(alpha);
+            double pacmanProgress = progress(pacmanMoveTick, engine.getPacmanInterval(), time);
+            double ghostProgress = progress(ghostMoveTick, engine.getGhostInterval(), time);
+            int pacmanX = between(pacmanFromCol, state.getPlayerCol(), pacmanProgress, fieldSize);
+            int pacmanY = between(pacmanFromRow, state.getPlayerRow(), pacmanProgress, fieldSize);
+
+            // follow Pacman smoothly with the camera
+            view.setBounds(cameraOffset(state.getCols() * fieldSize, getWidth(), pacmanX + fieldSize / 2),
+                    cameraOffset(state.getRows() * fieldSize, getHeight(), pacmanY + fieldSize / 2),
+                    getWidth(), getHeight());
+            Graphics2D scene = (Graphics2D) g.create();
+            scene.translate(-view.x, -view.y); // draw in board coordinates from here on
+
+            // draw the walls and gates from the chunks of the static layer
+            sprites.resize(fieldSize, getGraphicsConfiguration());
+            staticLayer.update(board, fieldSize);
+            staticLayer.paint(scene, view, getGraphicsConfiguration());
+
+            // determine the range of cells in view
+            int firstRow = Math.max(0, view.y / fieldSize);
+            int lastRow = Math.min(state.getRows() - 1, (view.y + view.height - 1) / fieldSize);
+            int firstCol = Math.max(0, view.x / fieldSize);
+            int lastCol = Math.min(state.getCols() - 1, (view.x + view.width - 1) / fieldSize);
+            cells = (lastRow - firstRow + 1) * (lastCol - firstCol + 1);
+
+            // vars for image rendering, actors are drawn at half the cell size in the middle of their cell
+            int imageOffset = (fieldSize - SpriteCache.Sprite.GHOST.size(fieldSize)) / 2;
+            long now = System.currentTimeMillis();
+
+            // render the key and the pellets of each visible cell
+            int pointSize = fieldSize / 10;
+            int pointOffset = (fieldSize - pointSize) / 2;
+            scene.setColor(Color.WHITE);
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int col = firstCol; col <= lastCol; col++) {
+                    int x = col * fieldSize;
+                    int y = row * fieldSize;
+                    if (board.tile(row, col) == Board.KEY) {
+                        sprites.draw(scene, SpriteCache.Sprite.KEY, x + imageOffset, y + imageOffset);
+                    } else if (board.hasPellet(row, col)) {
+                        scene.fillOval(x + pointOffset, y + pointOffset, pointSize, pointSize);
+                    }
                 }
             }
 
-            // render all ghosts based on their current positions
-            for (Ghost ghost : ghosts) {
-                imageSize = (int) (fieldSize * 0.5);
-                imageX = ghost.getCol() * fieldSize + (fieldSize - imageSize) / 2;
-                imageY = ghost.getRow() * fieldSize + (fieldSize - imageSize) / 2;
-                g.drawImage(ghostImg, imageX, imageY, imageSize, imageSize, this);
+            // render pacman and the ghosts between the cells they are moving between
+            if (pacman != null) {
+                SpriteCache.Sprite sprite = pacmanSprite();
+                sprites.draw(scene, sprite, sprites.frame(sprite, now), pacmanX + imageOffset, pacmanY + imageOffset);
             }
+            int ghostFrame = sprites.frame(SpriteCache.Sprite.GHOST, now);
+            for (Ghost ghost : state.getGhosts()) {
+                boolean moving = ghost.hasMovedIn(ghostMoveStep);
+                int x = moving ? between(ghost.getPreviousCol(), ghost.getCol(), ghostProgress, fieldSize)
+                        : ghost.getCol() * fieldSize;
+                int y = moving ? between(ghost.getPreviousRow(), ghost.getRow(), ghostProgress, fieldSize)
+                        : ghost.getRow() * fieldSize;
+                if (x + fieldSize > view.x && x < view.x + view.width
+                        && y + fieldSize > view.y && y < view.y + view.height) {
+                    sprites.draw(scene, SpriteCache.Sprite.GHOST, ghostFrame, x + imageOffset, y + imageOffset);
+                }
+            }
+            scene.dispose();
         }
 
         // draw the score on top of the board
         g.setColor(Color.YELLOW);
-        g.setFont(new Font("Comic Sans", Font.BOLD, 20));
-        g.drawString("Score: " + score, 10, 20);
+        g.setFont(SCORE_FONT);
+        g.drawString("Score: " + (state == null ? 0 : state.getScore()) + (best >= 0 ? "  Best: " + best : ""), 10, 20);
+        if (showMetrics) {
+            if (start - metricsTextAt > METRICS_REFRESH_NANOS) {
+                metricsText = metrics.summary();
+                metricsTextAt = start;
+            }
+            g.setFont(METRICS_FONT);
+            g.drawString(metricsText, 200, 18);
+        }
+        metrics.recordPaint(start, cells);
+    }
+
+    /**
+     * sums up everything a frame would show: the size of the panel and the cells, the step of the game,
+     * how far the actors have got between their cells and the frames of the animations.
+     * two frames with the same key look the same, unless the metrics are shown.
+     *
+     * @param alpha the fraction of the next tick that has already passed
+     * @return the key of the frame
+     */
+    private long sceneKey(double alpha) {
+        int fieldSize = fieldSize();
+        long key = (long) getWidth() << 32 | getHeight();
+        key = key * 31 + fieldSize;
+        if (fieldSize == 0 || sprites == null) {
+            return key * 31 + (sprites == null ? 1 : 0);
+        }
+        double time = gameTime(alpha);
+        long now = System.currentTimeMillis();
+        key = key * 31 + engine.getStep();
+        key = key * 31 + Math.round(progress(pacmanMoveTick, engine.getPacmanInterval(), time) * fieldSize);
+        if (!state.getGhosts().isEmpty()) {
+            key = key * 31 + Math.round(progress(ghostMoveTick, engine.getGhostInterval(), time) * fieldSize);
+            key = key * 31 + sprites.frame(SpriteCache.Sprite.GHOST, now);
+        }
+        if (pacman != null) {
+            SpriteCache.Sprite sprite = pacmanSprite();
+            key = key * 31 + sprite.ordinal();
+            key = key * 31 + sprites.frame(sprite, now);
+        }
+        return key;
+    }
+
+    /**
+     * gets the game time in ticks, which only moves on between ticks while the game runs.
+     */
+    private double gameTime(double alpha) {
+        return state.getTick() + (state.getStatus() == GameState.Status.PLAYING ? alpha : 1);
+    }
+
+    /**
+     * gets the sprite Pacman is drawn with. a living Pacman faces the way he moves.
+     */
+    private SpriteCache.Sprite pacmanSprite() {
+        return pacman == SpriteCache.Sprite.PACMAN ? SpriteCache.Sprite.pacman(state.getDirection()) : pacman;
+    }
+
+    /**
+     * calculates how far an actor has got on its way to the cell it moved to.
+     *
+     * @param moveTick the tick in which the actor moved
+     * @param interval the ticks the actor takes for a move
+     * @param time the current game time in ticks
+     * @return 0 at the cell it came from up to 1 at the cell it moved to
+     */
+    private static double progress(long moveTick, int interval, double time) {
+        if (moveTick == Long.MIN_VALUE) {
+            return 1;
+        }
+        return Math.max(0, Math.min(1, (time - moveTick) / interval));
+    }
+
+    /**
+     * calculates the pixel position of an actor between two cells along one axis.
+     */
+    private static int between(int from, int to, double progress, int fieldSize) {
+        return (int) Math.round((from + (to - from) * progress) * fieldSize);
+    }
+
+    /**
+     * gets the size of each cell based on panel's dimensions and board size.
+     * the cells never get smaller than MIN_FIELD_SIZE, larger boards are scrolled instead.
+     *
+     * @return the cell size in pixels, or 0 when no level is loaded
+     */
+    private int fieldSize() {
+        if (state == null || state.getRows() == 0 || state.getCols() == 0) {
+            return 0;
+        }
+        int fitting = Math.min(getWidth() / state.getCols(), getHeight() / state.getRows());
+        return Math.max(fitting, MIN_FIELD_SIZE);
+    }
+
+    /**
+     * calculates the camera position along one axis.
+     *
+     * @param boardSize the size of the board in pixels
+     * @param viewSize the size of the panel in pixels
+     * @param focus the pixel that should be in the middle of the view
+     * @return the first visible pixel of the board
+     */
+    private static int cameraOffset(int boardSize, int viewSize, int focus) {
+        if (boardSize <= viewSize) {
+            return 0;
+        }
+        return Math.max(0, Math.min(boardSize - viewSize, focus - viewSize / 2));
+    }
+
+    /**
+     * saves the recording of the current game, if anything was recorded, and stops recording it.
+     */
+    private void saveRecording() {
+        Recording finished = recording;
+        recording = null;
+        if (finished == null || finished.getTicks() == 0 || RECORDINGS_DIR.isEmpty()) {
+            return;
+        }
+        try {
+            Path directory = Path.of(RECORDINGS_DIR);
+            Files.createDirectories(directory);
+            String level = finished.getLevelId().replaceAll("[^A-Za-z0-9.-]", "_");
+            finished.save(directory.resolve(level + "-" + System.currentTimeMillis() + ".pacrec"));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * appends the result of the game that just ended to the results store, unless it was rewound or replayed.
+     */
+    private void storeResult() {
+        ResultStore store = results();
+        if (!ranked || store == null) {
+            return;
+        }
+        ranked = false; // a game is only stored once
+        try {
+            store.append(GameResult.of(levelId, 0, "human", state));
+            best = store.best(levelId);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * opens the results store on first use.
+     *
+     * @return the store, or null if storing results is turned off or the store cannot be opened
+     */
+    private ResultStore results() {
+        if (results == null && !RESULTS_FILE.isEmpty()) {
+            try {
+                results = new ResultStore(Path.of(RESULTS_FILE));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return results;
+    }
+
+    /**
+     * gets the highest score stored for a level, shown next to the score.
+     */
+    private int bestScore(String levelId) {
+        ResultStore store = results();
+        return store == null ? -1 : store.best(levelId);
+    }
+
+    private void closeResults() {
+        if (results != null) {
+            try {
+                results.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            results = null;
+        }
     }
 
     /**
      * Resets the game by clearing the game state.
      */
     private void resetGame() {
-        hasKey = false;
-        playerRow = playerCol = -1;
-        directionCol = directionRow = score = 0;
-        pacman = initialPacman;
-        ghosts.clear();
+        input.clear();
+        rewind.clear();
+        quickSave = null;
+        replay = null;
+        replayTicks = 0;
+        level = null;
+        keptEdits = new int[0];
+        ranked = false;
+        pacman = SpriteCache.Sprite.PACMAN;
     }
 }
\ No newline at end of file
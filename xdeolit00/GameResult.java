@@ -0,0 +1,105 @@
+package xdeolit00;
+
+/**
+ * this class holds the outcome of a single finished game.
+ */
+class GameResult {
+    /**
+     * how a game ended. TIMEOUT means the game was stopped before it was won or lost.
+     */
+    enum Outcome { WON, LOST, TIMEOUT }
+
+    private final String levelId;
+    private final long seed;
+    private final String controller;
+    private final Outcome outcome;
+    private final int score;
+    private final long ticks;
+
+    /**
+     * constructs a result.
+     *
+     * @param levelId the level the game was played on
+     * @param seed the seed of the game
+     * @param controller the name of the controller that played, or "human"
+     * @param outcome how the game ended
+     * @param score the final score
+     * @param ticks the number of ticks the game lasted
+     */
+    GameResult(String levelId, long seed, String controller, Outcome outcome, int score, long ticks) {
+        this.levelId = levelId;
+        this.seed = seed;
+        this.controller = controller;
+        this.outcome = outcome;
+        this.score = score;
+        this.ticks = ticks;
+    }
+
+    /**
+     * constructs the result of a game that has ended or was stopped.
+     *
+     * @param levelId the level the game was played on
+     * @param seed the seed of the game
+     * @param controller the name of the controller that played
+     * @param state the final state of the game
+     * @return the result
+     */
+    static GameResult of(String levelId, long seed, String controller, GameState state) {
+        Outcome outcome;
+        switch (state.getStatus()) {
+            case WON:
+                outcome = Outcome.WON; break;
+            case LOST:
+                outcome = Outcome.LOST; break;
+            default:
+                outcome = Outcome.TIMEOUT;
+        }
+        return new GameResult(levelId, seed, controller, outcome, state.getScore(), state.getTick());
+    }
+
+    public String getLevelId() {
+        return levelId;
+    }
+
+    /**
+     * gets the id the results of the game are grouped by, see levelGroup.
+     *
+     * @return the level id, generated mazes without their seed
+     */
+    public String getLevelGroup() {
+        return levelGroup(levelId);
+    }
+
+    /**
+     * groups generated levels by the id they were requested with, since they differ per seed.
+     * "gen:101x101:7" and "gen:101x101:8" both belong to "gen:101x101", other levels form a group of their own.
+     *
+     * @param levelId the id of a level
+     * @return the id without the seed of a generated maze
+     */
+    static String levelGroup(String levelId) {
+        int seed = levelId.lastIndexOf(':');
+        return levelId.startsWith(MazeGenerator.PREFIX) && seed >= MazeGenerator.PREFIX.length()
+                ? levelId.substring(0, seed) : levelId;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public String getController() {
+        return controller;
+    }
+
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+}
@@ -0,0 +1,489 @@
+package xdeolit00;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * this class runs games authoritatively for clients connected over TCP, see GameClient.
+ * a client joins a session by its name, which starts a new game on the requested level if the session
+ * does not exist yet. the first client asking for control steers Pacman, every other client spectates.
+ * the server ticks all sessions every TICK_MILLIS and sends each client a snapshot of the changes
+ * after every tick in which something changed, see SnapshotEncoder and Protocol.
+ *
+ * a single thread serves all sessions with non-blocking sockets and one Selector. a session only holds its
+ * game, its encoder and the list of its clients, and every connection keeps one input and one output buffer,
+ * so ticking and broadcasting do not allocate once the buffers have grown to fit the snapshots.
+ * a client that reads too slowly does not hold the others up: its pending deltas are dropped and
+ * it gets a FULL snapshot once it has caught up with what was already queued.
+ *
+ * clients can only start sessions on the levels the server allows: the bundled levels, the levels added
+ * with allowLevel, and generated mazes of up to getMaxGeneratedCells cells. the allowed levels are cached,
+ * generated mazes are built for their session only, so clients can neither read other files of the server
+ * nor fill its memory with levels.
+ */
+class GameServer implements Closeable {
+    static final int DEFAULT_PORT = 7777;
+    private static final long TICK_NANOS = GameLoop.TICK_MILLIS * 1_000_000L;
+    private static final int MAX_CATCH_UP_TICKS = 50;
+    // a connection whose queued output reaches this size is resynchronised instead of buffering more
+    private static final int MAX_PENDING = 1 << 20;
+    private static final Direction[] DIRECTIONS = Direction.values();
+    static final List<String> BUNDLED_LEVELS = List.of("levels/level1.txt", "levels/level2.txt", "levels/level3.txt");
+    static final long DEFAULT_MAX_GENERATED_CELLS = 1 << 20;
+
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final Map<String, Session> sessions = new HashMap<>();
+    private final List<Session> sessionList = new ArrayList<>();
+    private final Set<String> levels = new HashSet<>(BUNDLED_LEVELS);
+    private long maxGeneratedCells = DEFAULT_MAX_GENERATED_CELLS;
+    private int pacmanInterval = GameEngine.DEFAULT_PACMAN_INTERVAL;
+    private int ghostInterval = GameEngine.DEFAULT_GHOST_INTERVAL;
+    private volatile boolean open = true;
+    private volatile int sessionCount;
+
+    /**
+     * constructs a server listening on an address. no game runs until run is called.
+     *
+     * @param address the address to listen on, port 0 picks a free port
+     * @throws IOException if the socket cannot be opened
+     */
+    GameServer(InetSocketAddress address) throws IOException {
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(address);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * gets the port the server listens on.
+     *
+     * @return the local port
+     * @throws IOException if the port cannot be determined
+     */
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) server.getLocalAddress()).getPort();
+    }
+
+    /**
+     * gets the number of sessions that currently have clients.
+     *
+     * @return the number of sessions
+     */
+    public int getSessionCount() {
+        return sessionCount;
+    }
+
+    /**
+     * sets how many ticks pass between two moves of Pacman in sessions started from now on.
+     *
+     * @param ticks the interval in ticks
+     */
+    public void setPacmanInterval(int ticks) {
+        pacmanInterval = ticks;
+    }
+
+    /**
+     * sets how many ticks pass between two moves of the ghosts in sessions started from now on.
+     *
+     * @param ticks the interval in ticks
+     */
+    public void setGhostInterval(int ticks) {
+        ghostInterval = ticks;
+    }
+
+    /**
+     * allows clients to start sessions on a level, in addition to the bundled ones.
+     *
+     * @param levelId the file path or classpath resource of the level
+     */
+    public void allowLevel(String levelId) {
+        levels.add(levelId);
+    }
+
+    public long getMaxGeneratedCells() {
+        return maxGeneratedCells;
+    }
+
+    /**
+     * sets how large the generated mazes clients can start sessions on may be.
+     *
+     * @param cells the largest number of cells, rows * cols, 0 to not allow generated mazes
+     */
+    public void setMaxGeneratedCells(long cells) {
+        maxGeneratedCells = cells;
+    }
+
+    /**
+     * serves clients and ticks the sessions until the server is closed.
+     *
+     * @throws IOException if the selector fails
+     */
+    public void run() throws IOException {
+        long nextTick = System.nanoTime() + TICK_NANOS;
+        try {
+            while (open) {
+                long wait = nextTick - System.nanoTime();
+                if (wait >= 1_000_000) {
+                    selector.select(this::handle, wait / 1_000_000);
+                } else {
+                    selector.selectNow(this::handle);
+                }
+
+                long now = System.nanoTime();
+                int ran = 0;
+                while (now >= nextTick && ran < MAX_CATCH_UP_TICKS) {
+                    // backwards, a session may end when a client turns out to be disconnected
+                    for (int i = sessionList.size() - 1; i >= 0; i--) {
+                        sessionList.get(i).tick();
+                    }
+                    nextTick += TICK_NANOS;
+                    ran++;
+                }
+                if (now >= nextTick) {
+                    nextTick = now + TICK_NANOS; // resume after a long stall instead of racing ahead
+                }
+            }
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+        }
+    }
+
+    /**
+     * stops the server. the thread in run closes all connections and returns.
+     */
+    @Override
+    public void close() {
+        open = false;
+        selector.wakeup();
+    }
+
+    /**
+     * handles a socket that is ready to be accepted, read or written.
+     */
+    private void handle(SelectionKey key) {
+        try {
+            if (key.isAcceptable()) {
+                SocketChannel channel = server.accept();
+                if (channel != null) {
+                    channel.configureBlocking(false);
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                    Connection connection = new Connection(channel);
+                    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                }
+                return;
+            }
+            Connection connection = (Connection) key.attachment();
+            if (key.isReadable()) {
+                connection.read();
+            }
+            if (key.isValid() && key.isWritable()) {
+                connection.flush();
+            }
+        } catch (IOException | RuntimeException e) {
+            // e.g. a malformed message, only the client that sent it is disconnected
+            if (key.attachment() != null) {
+                disconnect((Connection) key.attachment());
+            }
+        }
+    }
+
+    /**
+     * handles a JOIN message, creating the session if needed.
+     */
+    private void join(Connection connection, String name, String levelId, boolean control) throws IOException {
+        if (connection.session != null) {
+            throw new IOException("joined twice");
+        }
+        Session session = sessions.get(name);
+        if (session == null) {
+            Level level;
+            try {
+                level = loadLevel(levelId);
+            } catch (IOException e) {
+                connection.fail("cannot load level " + levelId + ": " + e.getMessage());
+                return;
+            }
+            session = new Session(name, level);
+            sessions.put(name, session);
+            sessionList.add(session);
+            sessionCount = sessionList.size();
+        }
+        connection.session = session;
+        connection.control = control && session.controller == null;
+        if (connection.control) {
+            session.controller = connection;
+        }
+        session.connections.add(connection);
+        connection.send(session.encoder.full(connection.control));
+    }
+
+    /**
+     * loads a level a client asked for, if the server allows it.
+     *
+     * @throws IOException if the level is not allowed or cannot be loaded
+     */
+    private Level loadLevel(String levelId) throws IOException {
+        if (levels.contains(levelId)) {
+            return LevelLoader.load(levelId);
+        }
+        if (levelId.startsWith(MazeGenerator.PREFIX)) {
+            long cells;
+            try {
+                cells = MazeGenerator.cells(levelId);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+            if (cells > maxGeneratedCells) {
+                throw new IOException("generated mazes are limited to " + maxGeneratedCells + " cells");
+            }
+            return LevelLoader.read(levelId); // every client may ask for another seed, so it is not cached
+        }
+        throw new IOException("level not allowed");
+    }
+
+    /**
+     * closes a connection and ends its session once the last client has left.
+     */
+    private void disconnect(Connection connection) {
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            // the connection is gone anyway
+        }
+        Session session = connection.session;
+        if (session == null) {
+            return;
+        }
+        connection.session = null;
+        session.connections.remove(connection);
+        if (session.controller == connection) {
+            session.controller = null;
+        }
+        if (session.connections.isEmpty()) {
+            sessions.remove(session.name);
+            sessionList.remove(session);
+            sessionCount = sessionList.size();
+        }
+    }
+
+    /**
+     * a game hosted by the server together with the clients watching it.
+     */
+    private final class Session {
+        private final String name;
+        private final GameEngine engine;
+        private final SnapshotEncoder encoder;
+        private final InputBuffer input = new InputBuffer();
+        private final List<Connection> connections = new ArrayList<>();
+        private Connection controller;
+
+        Session(String name, Level level) {
+            this.name = name;
+            this.engine = new GameEngine(new GameState(level));
+            engine.setPacmanInterval(pacmanInterval);
+            engine.setGhostInterval(ghostInterval);
+            this.encoder = new SnapshotEncoder(level, engine);
+        }
+
+        /**
+         * runs a tick of the game and sends the changes to every client.
+         */
+        void tick() {
+            GameState state = engine.getState();
+            if (state.getStatus() != GameState.Status.PLAYING) {
+                return;
+            }
+            engine.tick(input.poll(state));
+            ByteBuffer delta = encoder.delta();
+            if (delta == null) {
+                return;
+            }
+            for (int i = connections.size() - 1; i >= 0; i--) {
+                Connection connection = connections.get(i);
+                try {
+                    connection.broadcast(delta);
+                } catch (IOException e) {
+                    disconnect(connection);
+                }
+            }
+        }
+    }
+
+    /**
+     * a connected client with its buffers.
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+        private final ByteBuffer in = ByteBuffer.allocate(Protocol.MAX_CLIENT_FRAME);
+        private ByteBuffer out = ByteBuffer.allocateDirect(16 * 1024); // kept in write mode
+        private SelectionKey key;
+        private Session session;
+        private boolean control;
+        private boolean resync;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * reads what the client sent and handles every complete message.
+         */
+        void read() throws IOException {
+            if (channel.read(in) < 0) {
+                throw new IOException("closed by the client");
+            }
+            in.flip();
+            int length;
+            while ((length = Protocol.nextFrame(in)) >= 0) {
+                int end = in.position() + length;
+                // a message is decoded from its frame only, so a short one cannot read into the next
+                handle(in.slice(in.position(), length));
+                in.position(end);
+                if (session == null && !channel.isOpen()) {
+                    return;
+                }
+            }
+            if (in.position() == 0 && in.limit() == in.capacity()) {
+                throw new IOException("message too long");
+            }
+            in.compact();
+        }
+
+        private void handle(ByteBuffer message) throws IOException {
+            if (!message.hasRemaining()) {
+                throw new IOException("empty message");
+            }
+            byte type = message.get();
+            switch (type) {
+                case Protocol.JOIN:
+                    String name = Protocol.getString(message);
+                    String levelId = Protocol.getString(message);
+                    join(this, name, levelId, message.get() == Protocol.CONTROL);
+                    break;
+                case Protocol.INPUT:
+                    int direction = message.get();
+                    if (control && direction >= 0 && direction < DIRECTIONS.length) {
+                        session.input.press(DIRECTIONS[direction], System.nanoTime());
+                    }
+                    break;
+                default:
+                    throw new IOException("unknown message " + type);
+            }
+        }
+
+        /**
+         * queues a delta, or drops it if the client is too far behind and will get a FULL snapshot instead.
+         */
+        void broadcast(ByteBuffer delta) throws IOException {
+            if (resync) {
+                return;
+            }
+            if (out.position() + Protocol.frameSize(delta) > MAX_PENDING) {
+                resync = true;
+                return;
+            }
+            send(delta);
+        }
+
+        /**
+         * queues a message and writes as much as the socket takes right away.
+         */
+        void send(ByteBuffer message) throws IOException {
+            int size = Protocol.frameSize(message);
+            if (out.remaining() < size) {
+                ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(out.capacity() * 2, out.position() + size));
+                grown.put(out.flip());
+                out = grown;
+            }
+            Protocol.putFrame(message, out);
+            flush();
+        }
+
+        /**
+         * writes queued output and waits for the socket to become writable if not all of it fits.
+         */
+        void flush() throws IOException {
+            out.flip();
+            channel.write(out);
+            out.compact();
+            if (out.position() == 0 && resync && session != null) {
+                // everything queued before the dropped deltas has arrived, start over from the current state
+                resync = false;
+                send(session.encoder.full(control));
+                return;
+            }
+            int ops = out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+            if (key.interestOps() != ops) {
+                key.interestOps(ops);
+            }
+        }
+
+        /**
+         * tells the client why it is disconnected and closes the connection.
+         */
+        void fail(String reason) throws IOException {
+            ByteBuffer message = ByteBuffer.allocate(reason.length() * 3 + 8);
+            message.put(Protocol.ERROR);
+            Protocol.putString(message, reason);
+            send(message.flip());
+            disconnect(this);
+        }
+    }
+
+    /**
+     * starts a server from the command line: [--port P] [--pacman-interval N] [--ghost-interval N]
+     * [--level ID]... [--max-generated-cells N]. every --level allows clients to play another level.
+     *
+     * @param args the command line arguments
+     * @throws IOException if the server cannot be started
+     */
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        int pacmanInterval = GameEngine.DEFAULT_PACMAN_INTERVAL;
+        int ghostInterval = GameEngine.DEFAULT_GHOST_INTERVAL;
+        long maxGeneratedCells = DEFAULT_MAX_GENERATED_CELLS;
+        List<String> levels = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port": port = Integer.parseInt(args[++i]); break;
+                case "--pacman-interval": pacmanInterval = Integer.parseInt(args[++i]); break;
+                case "--ghost-interval": ghostInterval = Integer.parseInt(args[++i]); break;
+                case "--level": levels.add(args[++i]); break;
+                case "--max-generated-cells": maxGeneratedCells = Long.parseLong(args[++i]); break;
+                default:
+                    System.err.println("usage: server [--port P] [--pacman-interval N] [--ghost-interval N]"
+                            + " [--level ID]... [--max-generated-cells N]");
+                    System.exit(2);
+            }
+        }
+        try (GameServer server = new GameServer(new InetSocketAddress(port))) {
+            server.setPacmanInterval(pacmanInterval);
+            server.setGhostInterval(ghostInterval);
+            server.setMaxGeneratedCells(maxGeneratedCells);
+            for (String level : levels) {
+                server.allowLevel(level);
+            }
+            System.out.println("serving games on port " + server.getPort());
+            server.run();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package xdeolit00;
+
+/**
+ * this class is an immutable snapshot of a GameState: the board, the positions of Pacman and the ghosts,
+ * Pacman's direction, the score, the key, the status and the tick.
+ * snapshots share everything that did not change with the state and with the previous snapshot. the board is
+ * a copy-on-write copy, see Board.snapshot, and the ghost positions are only copied in ticks in which a ghost
+ * moved, so taking a snapshot every tick mostly costs a small object.
+ *
+ * a snapshot is restored with GameState.restore. restoring only replaces references and moves the ghosts,
+ * so search-based controllers can cheaply try out moves on a scratch state and go back to the snapshot.
+ */
+final class GameSnapshot {
+    private final Board board;
+    private final int playerRow, playerCol;
+    private final Direction direction;
+    private final boolean hasKey;
+    private final int score;
+    private final GameState.Status status;
+    private final long tick;
+    private final int[] ghostCells; // row * cols + col of each ghost, shared between snapshots while no ghost moves
+
+    private GameSnapshot(GameState state, int[] ghostCells) {
+        this.board = state.getBoard().snapshot();
+        this.playerRow = state.getPlayerRow();
+        this.playerCol = state.getPlayerCol();
+        this.direction = state.getDirection();
+        this.hasKey = state.hasKey();
+        this.score = state.getScore();
+        this.status = state.getStatus();
+        this.tick = state.getTick();
+        this.ghostCells = ghostCells;
+    }
+
+    /**
+     * takes a snapshot of a game.
+     *
+     * @param state the game
+     * @return the snapshot
+     */
+    static GameSnapshot of(GameState state) {
+        return of(state, null);
+    }
+
+    /**
+     * takes a snapshot of a game, sharing the ghost positions with an earlier snapshot of the same game if they did not change.
+     *
+     * @param state the game
+     * @param previous an earlier snapshot of the game, or null
+     * @return the snapshot
+     */
+    static GameSnapshot of(GameState state, GameSnapshot previous) {
+        int cols = state.getCols();
+        int[] ghostCells = previous != null ? previous.ghostCells : null;
+        if (ghostCells == null || !sameGhosts(state, ghostCells, cols)) {
+            ghostCells = new int[state.ghosts().size()];
+            for (int i = 0; i < ghostCells.length; i++) {
+                Ghost ghost = state.ghosts().get(i);
+                ghostCells[i] = ghost.getRow() * cols + ghost.getCol();
+            }
+        }
+        return new GameSnapshot(state, ghostCells);
+    }
+
+    private static boolean sameGhosts(GameState state, int[] ghostCells, int cols) {
+        if (ghostCells.length != state.ghosts().size()) {
+            return false;
+        }
+        for (int i = 0; i < ghostCells.length; i++) {
+            Ghost ghost = state.ghosts().get(i);
+            if (ghostCells[i] != ghost.getRow() * cols + ghost.getCol()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    Board getBoard() {
+        return board;
+    }
+
+    public int getPlayerRow() {
+        return playerRow;
+    }
+
+    public int getPlayerCol() {
+        return playerCol;
+    }
+
+    public Direction getDirection() {
+        return direction;
+    }
+
+    public boolean hasKey() {
+        return hasKey;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public GameState.Status getStatus() {
+        return status;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public int getGhostCount() {
+        return ghostCells.length;
+    }
+
+    /**
+     * gets the cell a ghost stood on.
+     *
+     * @param ghost the index of the ghost
+     * @return the index of the cell, row * cols + col
+     */
+    public int getGhostCell(int ghost) {
+        return ghostCells[ghost];
+    }
+}
@@ -0,0 +1,246 @@
+package xdeolit00;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * this class holds the complete state of a single game: the board, Pacman, the ghosts,
+ * the score and whether the key has been collected.
+ * it has no dependency on Swing or AWT, so games can be created and simulated without a display.
+ * the state is only changed by the GameEngine, views are expected to read it.
+ */
+class GameState {
+    /**
+     * the possible outcomes of a game.
+     */
+    enum Status { PLAYING, WON, LOST }
+
+    private final Board board;
+
+    // pacman variables
+    private int playerRow = -1, playerCol = -1;
+    private Direction direction = Direction.NONE;
+    private boolean hasKey = false;
+    private int score = 0;
+
+    private final List<Ghost> ghosts = new ArrayList<>();
+    private final OccupancyGrid occupancy;
+    private Status status = Status.PLAYING;
+    private long tick = 0;
+
+    /**
+     * constructs a new game on a level.
+     * the game gets its own copy of the level's board, and Pacman and the ghosts are placed at their starting positions.
+     *
+     * @param level the level template to start from
+     */
+    GameState(Level level) {
+        this.board = level.newBoard();
+        this.occupancy = new OccupancyGrid(board.getRows(), board.getCols());
+        this.playerRow = level.getPacmanRow();
+        this.playerCol = level.getPacmanCol();
+        for (int i = 0; i < level.getGhostCount(); i++) {
+            // add each ghost to the list and mark its cell as taken
+            occupancy.place(i, level.getGhostRow(i), level.getGhostCol(i));
+            ghosts.add(new Ghost(i, level.getGhostRow(i), level.getGhostCol(i)));
+        }
+    }
+
+    /**
+     * gets the tiles and pellets of the game.
+     *
+     * @return the board
+     */
+    public Board getBoard() {
+        return board;
+    }
+
+    public int getRows() {
+        return board.getRows();
+    }
+
+    public int getCols() {
+        return board.getCols();
+    }
+
+    public int getPlayerRow() {
+        return playerRow;
+    }
+
+    public int getPlayerCol() {
+        return playerCol;
+    }
+
+    public Direction getDirection() {
+        return direction;
+    }
+
+    public boolean hasKey() {
+        return hasKey;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * gets the ghosts of the game.
+     *
+     * @return a read-only view of the ghost list
+     */
+    public List<Ghost> getGhosts() {
+        return Collections.unmodifiableList(ghosts);
+    }
+
+    /**
+     * gets the grid recording which cells are taken by ghosts.
+     *
+     * @return the occupancy grid
+     */
+    public OccupancyGrid getOccupancy() {
+        return occupancy;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * gets the number of ticks the game has been simulated for.
+     *
+     * @return the tick counter
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * calculates a hash of everything that can change while the game is played.
+     * two games that were fed the same inputs have the same checksum after every tick,
+     * so comparing checksums detects when a replay diverges from its recording.
+     *
+     * @return the checksum of the state
+     */
+    public long checksum() {
+        long hash = board.pelletChecksum();
+        hash = hash * 31 + playerRow;
+        hash = hash * 31 + playerCol;
+        hash = hash * 31 + direction.ordinal();
+        hash = hash * 31 + (hasKey ? 1 : 0);
+        hash = hash * 31 + score;
+        hash = hash * 31 + status.ordinal();
+        hash = hash * 31 + tick;
+        for (int i = 0; i < ghosts.size(); i++) {
+            hash = hash * 31 + ghosts.get(i).getRow();
+            hash = hash * 31 + ghosts.get(i).getCol();
+        }
+        return hash;
+    }
+
+    /**
+     * takes a snapshot of the game, see GameSnapshot.
+     *
+     * @return the snapshot
+     */
+    public GameSnapshot snapshot() {
+        return GameSnapshot.of(this);
+    }
+
+    /**
+     * puts the game back into the state of a snapshot taken from a game on the same level.
+     * the board shares the data of the snapshot and the ghosts are moved to their cells, nothing is allocated
+     * beyond the pages of the board that are changed later.
+     *
+     * @param snapshot the snapshot to restore
+     */
+    public void restore(GameSnapshot snapshot) {
+        if (snapshot.getGhostCount() != ghosts.size()) {
+            throw new IllegalArgumentException("the snapshot has " + snapshot.getGhostCount()
+                    + " ghosts, the game " + ghosts.size());
+        }
+        board.restore(snapshot.getBoard());
+        playerRow = snapshot.getPlayerRow();
+        playerCol = snapshot.getPlayerCol();
+        direction = snapshot.getDirection();
+        hasKey = snapshot.hasKey();
+        score = snapshot.getScore();
+        status = snapshot.getStatus();
+        tick = snapshot.getTick();
+
+        // free all cells first, a ghost may go back to a cell another ghost has not left yet
+        for (int i = 0; i < ghosts.size(); i++) {
+            occupancy.remove(ghosts.get(i).getRow(), ghosts.get(i).getCol());
+        }
+        int cols = board.getCols();
+        for (int i = 0; i < ghosts.size(); i++) {
+            int cell = snapshot.getGhostCell(i);
+            ghosts.get(i).setPosition(cell / cols, cell % cols);
+            occupancy.place(i, cell / cols, cell % cols);
+        }
+    }
+
+    /**
+     * starts the game over on the level it was created on, reusing the arrays of the game.
+     * once the board owns all of its data this does not allocate, which suits environments that restart
+     * games over and over.
+     *
+     * @param level the level the game was created on
+     */
+    public void reset(Level level) {
+        if (level.getGhostCount() != ghosts.size()) {
+            throw new IllegalArgumentException("the level has " + level.getGhostCount()
+                    + " ghosts, the game " + ghosts.size());
+        }
+        board.copyFrom(level.getBoard());
+        playerRow = level.getPacmanRow();
+        playerCol = level.getPacmanCol();
+        direction = Direction.NONE;
+        hasKey = false;
+        score = 0;
+        status = Status.PLAYING;
+        tick = 0;
+        for (int i = 0; i < ghosts.size(); i++) {
+            occupancy.remove(ghosts.get(i).getRow(), ghosts.get(i).getCol());
+        }
+        for (int i = 0; i < ghosts.size(); i++) {
+            ghosts.get(i).setPosition(level.getGhostRow(i), level.getGhostCol(i));
+            occupancy.place(i, level.getGhostRow(i), level.getGhostCol(i));
+        }
+    }
+
+    // mutators used by the GameEngine
+
+    List<Ghost> ghosts() {
+        return ghosts;
+    }
+
+    void setPlayerPosition(int row, int col) {
+        playerRow = row;
+        playerCol = col;
+    }
+
+    void setDirection(Direction direction) {
+        this.direction = direction;
+    }
+
+    void collectKey() {
+        hasKey = true;
+    }
+
+    void addScore(int points) {
+        score += points;
+    }
+
+    void setStatus(Status status) {
+        this.status = status;
+    }
+
+    void advanceTick() {
+        tick++;
+    }
+
+    void setTick(long tick) {
+        this.tick = tick;
+    }
+}
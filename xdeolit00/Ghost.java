@@ -1,116 +1,144 @@
 package xdeolit00;
-import java.util.List;
 
 /**
  * this class defines the movement logic of the ghosts in the Pacman game.
- * the ghosts chase Pacman and move in a way to avoid collisions with walls and other ghosts.
+ * the ghosts chase Pacman along the shortest path and avoid collisions with walls and other ghosts.
  */
 public class Ghost {
+    // neighbouring cells in the order they are preferred when distances are equal: up, down, left, right
+    private static final int[][] DIRECTIONS = {{-1, 0}, {1, 0}, {0, -1}, {0, 1}};
+
+    private final int index;
     private int row, col;
-    private final char[][] board;
-    private final GamePanel gamePanel;
+
+    // the cell the ghost came from and the step of the engine in which it last moved
+    private int previousRow, previousCol;
+    private long movedInStep = -1;
 
     /**
      * constructs a ghost at a specific position on the board.
      *
+     * @param index the position of the ghost in the list of all ghosts, used to mark it in the occupancy grid
      * @param row the initial row position of the ghost
      * @param col the initial column position of the ghost
-     * @param board the game board containing the layout
-     * @param gamePanel the panel responsible for managing the game state and rendering
      */
-    public Ghost(int row, int col, char[][] board, GamePanel gamePanel) {
+    public Ghost(int index, int row, int col) {
+        this.index = index;
         this.row = row;
         this.col = col;
-        this.board = board;
-        this.gamePanel = gamePanel;
+        this.previousRow = row;
+        this.previousCol = col;
     }
 
     /**
-     * moves the ghost to chase Pacman based on its current position and Pacman's position.
-     * if the primary movement direction is blocked, the ghost attempts to move randomly to free itself.
+     * decides where the ghost wants to go, without moving it.
+     * the ghost looks up the distances of its neighbouring cells in the shared flow field and picks
+     * the closest free one. if every cell closer to Pacman is occupied by another ghost, it waits.
+     * the field and the grid are only read, so the ghosts can decide in parallel.
      *
-     * @param pacmanRow the row position of Pacman
-     * @param pacmanCol the column position of Pacman
-     * @param ghosts the list of all ghosts in the game
+     * @param field the distance field towards Pacman's current position
+     * @param occupancy the grid of cells taken by ghosts
+     * @return the index of the chosen direction, or -1 if the ghost stays where it is
      */
-    public void move(int pacmanRow, int pacmanCol, List<Ghost> ghosts) {
-        int bestRowDir = 0;
-        int bestColDir = 0;
-
-        // determine the primary direction towards Pacman (how far ghosts are vert. and hor.)
-        int rowDiff = pacmanRow - row;
-        int colDiff = pacmanCol - col;
-
-        // prioritise movement in direction where distance is greater
-        if (Math.abs(rowDiff) > Math.abs(colDiff)) {
-            bestRowDir = Integer.signum(rowDiff); // -1, 0, or 1 to move up, no move or down
-        } else {
-            bestColDir = Integer.signum(colDiff); // -1, 0, or 1 to move left, no move, or right
-        }
-
-        // attempt to move in the best direction
-        if (tryMove(row + bestRowDir, col + bestColDir, pacmanRow, pacmanCol, ghosts)) {
-            return;
+    public int decide(FlowField field, OccupancyGrid occupancy) {
+        int bestDistance = field.distance(row, col);
+        if (bestDistance == FlowField.UNREACHABLE) {
+            return -1; // Pacman cannot be reached from here
         }
 
-        // if blocked, try to move up, down, left or right
-        int[][] directions = {{-1, 0}, {1, 0}, {0, -1}, {0, 1}};
-        for (int[] dir : directions) {
-            if (tryMove(row + dir[0], col + dir[1], pacmanRow, pacmanCol, ghosts)) {
-                return;
+        int best = -1;
+        for (int i = 0; i < DIRECTIONS.length; i++) {
+            int newRow = row + DIRECTIONS[i][0];
+            int newCol = col + DIRECTIONS[i][1];
+            int distance = field.distance(newRow, newCol);
+            // walls and cells outside the board are unreachable in the flow field
+            if (distance != FlowField.UNREACHABLE && distance < bestDistance && occupancy.isFree(newRow, newCol)) {
+                bestDistance = distance;
+                best = i;
             }
         }
+        return best;
     }
 
     /**
-     * attempts to move the ghost to a new position and checks if the move is valid.
-     * if the move is successful, the ghost's position is updated and any collisions are checked.
+     * moves the ghost as decided, unless the cell has been taken in the meantime.
      *
-     * @param newRow the new row position the ghost is trying to move to
-     * @param newCol the new column position the ghost is trying to move to
-     * @param pacmanRow the row position of Pacman, for collision detection
-     * @param pacmanCol the column position of Pacman, for collision detection
-     * @param ghosts the list of all ghosts in the game
-     * @return true if the move is successful, false otherwise
+     * @param decision the direction returned by decide, or -1 to stay
+     * @param occupancy the grid of cells taken by ghosts, updated when the ghost moves
+     * @param step the current step of the engine, remembered to detect ghosts swapping cells with Pacman
+     * @return true if the ghost moved
      */
-    private boolean tryMove(int newRow, int newCol, int pacmanRow, int pacmanCol, List<Ghost> ghosts) {
-        if (isValidMove(newRow, newCol, pacmanRow, pacmanCol, ghosts)) {
-            row = newRow;
-            col = newCol;
-            gamePanel.checkCollision(pacmanRow, pacmanCol);
-            return true;
+    public boolean commit(int decision, OccupancyGrid occupancy, long step) {
+        if (decision == -1) {
+            return false;
+        }
+        int newRow = row + DIRECTIONS[decision][0];
+        int newCol = col + DIRECTIONS[decision][1];
+        if (!occupancy.isFree(newRow, newCol)) {
+            return false; // another ghost got there first
         }
-        return false;
+        occupancy.move(index, row, col, newRow, newCol);
+        previousRow = row;
+        previousCol = col;
+        movedInStep = step;
+        row = newRow;
+        col = newCol;
+        return true;
     }
 
     /**
-     * checks if a move to a new position is valid.
-     * a move is valid if it does not go out of bounds, collide with walls, or overlap with other ghosts.
+     * puts the ghost on a cell without moving it there, e.g. when a game is copied from a snapshot.
+     * the caller keeps the occupancy grid up to date.
      *
-     * @param newRow the new row position the ghost is trying to move to
-     * @param newCol the new column position the ghost is trying to move to
-     * @param pacmanRow the row position of Pacman, for collision detection
-     * @param pacmanCol the column position of Pacman, for collision detection
-     * @param ghosts the list of all ghosts in the game, to check for overlap with other ghosts
-     * @return true if the move is valid, false otherwise
+     * @param row the new row position of the ghost
+     * @param col the new column position of the ghost
      */
-    private boolean isValidMove(int newRow, int newCol, int pacmanRow, int pacmanCol, List<Ghost> ghosts) {
-        // check for game panel's boundaries
-        if (newRow < 0 || newRow >= board.length || newCol < 0 || newCol >= board[0].length) {
-            return false;
-        }
-        // check for walls
-        if (board[newRow][newCol] == 'W') {
-            return false;
-        }
+    void setPosition(int row, int col) {
+        this.row = row;
+        this.col = col;
+        this.previousRow = row;
+        this.previousCol = col;
+        this.movedInStep = -1;
+    }
 
-        // check for collision with other ghosts to avoid overlap
-        for (Ghost ghost : ghosts) {
-            if (ghost != this && ghost.row == newRow && ghost.col == newCol) {
-                return false; // square is occupied by another ghost
-            }
-        }
-        return true;
+    /**
+     * checks if the ghost moved from the given cell during the given step of the engine.
+     *
+     * @param fromRow the row of the cell
+     * @param fromCol the column of the cell
+     * @param step the step of the engine
+     * @return true if the ghost left that cell in that step
+     */
+    public boolean movedFrom(int fromRow, int fromCol, long step) {
+        return movedInStep == step && previousRow == fromRow && previousCol == fromCol;
+    }
+
+    /**
+     * checks if the ghost moved during the given step of the engine.
+     *
+     * @param step the step of the engine
+     * @return true if the ghost moved in that step
+     */
+    public boolean hasMovedIn(long step) {
+        return movedInStep == step;
+    }
+
+    /**
+     * gets the row the ghost occupied before its last move.
+     *
+     * @return the previous row position of the ghost
+     */
+    public int getPreviousRow() {
+        return previousRow;
+    }
+
+    /**
+     * gets the column the ghost occupied before its last move.
+     *
+     * @return the previous column position of the ghost
+     */
+    public int getPreviousCol() {
+        return previousCol;
     }
 
     /**
@@ -0,0 +1,78 @@
+package xdeolit00;
+
+/**
+ * this controller walks Pacman along the shortest path to the key and then to the gate.
+ * it uses a FlowField from its current target and steps to the neighbouring cell closest to it,
+ * preferring cells that are neither taken by a ghost nor next to one.
+ */
+class GreedyController implements Controller {
+    private static final Direction[] DIRECTIONS = {Direction.UP, Direction.DOWN, Direction.LEFT, Direction.RIGHT};
+
+    private FlowField field;
+    private int keyRow = -1, keyCol = -1, gateRow = -1, gateCol = -1;
+
+    @Override
+    public Direction decide(GameState state) {
+        Board board = state.getBoard();
+        if (field == null) {
+            findTargets(board);
+            field = new FlowField(board);
+        }
+
+        // head for the key first, then for the gate
+        boolean toKey = !state.hasKey() && keyRow != -1;
+        int targetRow = toKey ? keyRow : gateRow;
+        int targetCol = toKey ? keyCol : gateCol;
+        if (targetRow == -1) {
+            return Direction.NONE;
+        }
+        field.update(targetRow, targetCol);
+
+        Direction best = Direction.NONE;
+        int bestDistance = Integer.MAX_VALUE;
+        boolean bestSafe = false;
+        for (Direction direction : DIRECTIONS) {
+            int row = state.getPlayerRow() + direction.getRowOffset();
+            int col = state.getPlayerCol() + direction.getColOffset();
+            int distance = field.distance(row, col);
+            if (distance == FlowField.UNREACHABLE || !GameEngine.canEnter(state, row, col)) {
+                continue; // Pacman cannot go there
+            }
+            boolean safe = isSafe(state.getOccupancy(), row, col);
+            // a safe cell always beats an unsafe one, otherwise the shorter path wins
+            if ((safe && !bestSafe) || (safe == bestSafe && distance < bestDistance)) {
+                best = direction;
+                bestDistance = distance;
+                bestSafe = safe;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * finds the key and the gate on the board.
+     */
+    private void findTargets(Board board) {
+        for (int row = 0; row < board.getRows(); row++) {
+            for (int col = 0; col < board.getCols(); col++) {
+                byte tile = board.tile(row, col);
+                if (tile == Board.KEY && keyRow == -1) {
+                    keyRow = row;
+                    keyCol = col;
+                } else if (tile == Board.GATE && gateRow == -1) {
+                    gateRow = row;
+                    gateCol = col;
+                }
+            }
+        }
+    }
+
+    /**
+     * checks if neither the cell nor any of its neighbours holds a ghost.
+     */
+    private static boolean isSafe(OccupancyGrid occupancy, int row, int col) {
+        return occupancy.isFree(row, col)
+                && occupancy.isFree(row - 1, col) && occupancy.isFree(row + 1, col)
+                && occupancy.isFree(row, col - 1) && occupancy.isFree(row, col + 1);
+    }
+}
@@ -0,0 +1,186 @@
+package xdeolit00;
+
+/**
+ * this class turns the keyboard and mouse events of the player into one direction per tick.
+ * a turn is buffered until Pacman can actually take it, so a turn pressed just before an opening is
+ * taken as soon as he reaches the opening instead of being lost. mouse events are coalesced, only the
+ * last position the mouse was moved to is turned into a direction once per tick, and a diagonal is
+ * resolved to the axis Pacman can move along. a click sets a destination instead, see Navigator, and Pacman
+ * is turned along the shortest route to it until he arrives there or the player steers him with the keyboard.
+ * every input is timestamped, so the time until Pacman actually moves in the new direction can be measured.
+ * the buffer is used on the thread of the GameLoop only, the listeners post their events to it.
+ */
+class InputBuffer {
+    // the turn waiting to be taken, and when it was requested
+    private Direction turn = Direction.NONE;
+    private long turnNanos;
+    private boolean timed; // false for the turns of a route after its first, which the player did not ask for
+
+    // the route to the cell that was clicked, null until a level with a navigation graph is set
+    private Navigator navigator;
+    private long clickedNanos;
+    private boolean clicked; // true until the first turn of the route has been decided
+
+    // the last cell the mouse pointed at since the previous tick, and when the first of those events arrived
+    private boolean pointed = false;
+    private int targetRow, targetCol;
+    private long pointedNanos;
+
+    // the last turn that was taken but has not moved Pacman yet
+    private Direction awaiting = Direction.NONE;
+    private long awaitingNanos;
+
+    /**
+     * buffers a turn requested with the keyboard, replacing any turn that was not taken yet.
+     *
+     * @param direction the requested direction
+     * @param nanos the System.nanoTime at which the input arrived
+     */
+    public void press(Direction direction, long nanos) {
+        turn = direction;
+        turnNanos = nanos;
+        timed = true;
+        pointed = false;
+        if (navigator != null) {
+            navigator.clear(); // the keyboard takes over from the route
+        }
+    }
+
+    /**
+     * remembers the cell the mouse points at. the cell is only turned into a direction at the next tick.
+     *
+     * @param row the row of the cell
+     * @param col the column of the cell
+     * @param nanos the System.nanoTime at which the input arrived
+     */
+    public void point(int row, int col, long nanos) {
+        if (!pointed) {
+            pointedNanos = nanos;
+            pointed = true;
+        }
+        targetRow = row;
+        targetCol = col;
+    }
+
+    /**
+     * sets a destination to walk Pacman to along the shortest route. ignored until a navigation graph is set.
+     *
+     * @param row the row of the clicked cell
+     * @param col the column of the clicked cell
+     * @param nanos the System.nanoTime at which the click arrived
+     */
+    public void moveTo(int row, int col, long nanos) {
+        if (navigator == null) {
+            return;
+        }
+        navigator.setDestination(row, col);
+        turn = Direction.NONE;
+        pointed = false;
+        clickedNanos = nanos;
+        clicked = true;
+    }
+
+    /**
+     * sets the graph that routes to clicked cells are planned on, e.g. when a new level is loaded.
+     *
+     * @param graph the graph of the level, or null to turn click-to-move off
+     */
+    public void setNavigation(NavigationGraph graph) {
+        navigator = graph != null ? new Navigator(graph) : null;
+    }
+
+    /**
+     * forgets all input, e.g. when a new game starts.
+     */
+    public void clear() {
+        turn = Direction.NONE;
+        pointed = false;
+        awaiting = Direction.NONE;
+        if (navigator != null) {
+            navigator.clear();
+        }
+    }
+
+    /**
+     * decides the input for the next tick.
+     * the buffered turn is returned as soon as Pacman can move in its direction, until then Pacman keeps going.
+     * while Pacman walks to a clicked cell the mouse does not steer him, and the turn is the next one of the route.
+     *
+     * @param state the game about to be ticked
+     * @return the direction to steer Pacman in, or NONE to keep his current direction
+     */
+    public Direction poll(GameState state) {
+        if (navigator != null && navigator.hasDestination()) {
+            pointed = false;
+            Direction direction = navigator.next(state);
+            if (direction != Direction.NONE) {
+                turn = direction;
+                turnNanos = clickedNanos;
+                timed = clicked;
+                clicked = false;
+            }
+        } else if (pointed) {
+            pointed = false;
+            Direction direction = towards(state, targetRow, targetCol);
+            if (direction != Direction.NONE) {
+                turn = direction;
+                turnNanos = pointedNanos;
+                timed = true;
+            }
+        }
+        if (turn == Direction.NONE) {
+            return Direction.NONE;
+        }
+        if (turn == state.getDirection()) {
+            turn = Direction.NONE; // Pacman already goes that way
+            return Direction.NONE;
+        }
+        if (!canMove(state, turn)) {
+            return Direction.NONE; // keep the turn until there is an opening
+        }
+        Direction taken = turn;
+        if (timed) {
+            awaiting = turn;
+            awaitingNanos = turnNanos;
+        }
+        turn = Direction.NONE;
+        return taken;
+    }
+
+    /**
+     * reports that Pacman has moved, to measure how long the last turn took to show an effect.
+     *
+     * @param state the game after Pacman moved
+     * @param nanos the current System.nanoTime
+     * @return the nanoseconds between the input and the move, or -1 if the move was not caused by a new turn
+     */
+    public long moved(GameState state, long nanos) {
+        if (awaiting == Direction.NONE || awaiting != state.getDirection()) {
+            return -1;
+        }
+        awaiting = Direction.NONE;
+        return nanos - awaitingNanos;
+    }
+
+    /**
+     * finds the direction towards a cell along a single axis.
+     * the axis with the larger distance is preferred, unless only the other one is open.
+     */
+    private static Direction towards(GameState state, int row, int col) {
+        int deltaRow = row - state.getPlayerRow();
+        int deltaCol = col - state.getPlayerCol();
+        Direction vertical = deltaRow > 0 ? Direction.DOWN : deltaRow < 0 ? Direction.UP : Direction.NONE;
+        Direction horizontal = deltaCol > 0 ? Direction.RIGHT : deltaCol < 0 ? Direction.LEFT : Direction.NONE;
+        Direction first = Math.abs(deltaCol) > Math.abs(deltaRow) ? horizontal : vertical;
+        Direction second = first == horizontal ? vertical : horizontal;
+        if (second != Direction.NONE && !canMove(state, first) && canMove(state, second)) {
+            return second;
+        }
+        return first;
+    }
+
+    private static boolean canMove(GameState state, Direction direction) {
+        return GameEngine.canEnter(state, state.getPlayerRow() + direction.getRowOffset(),
+                state.getPlayerCol() + direction.getColOffset());
+    }
+}
@@ -0,0 +1,94 @@
+package xdeolit00;
+
+/**
+ * this class counts recorded values, e.g. durations in nanoseconds, in logarithmic buckets.
+ * every power of two is split into SUB_BUCKETS buckets, so a percentile is accurate to about 12%
+ * whatever the magnitude of the values. recording a value only increments an array element and never
+ * allocates, which keeps the histogram cheap enough to run on every tick and every frame.
+ * the histogram is not thread-safe, it is meant to be filled by a single thread such as the thread of the GameLoop.
+ */
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final long[] counts = new long[64 * SUB_BUCKETS];
+    private long count;
+    private long sum;
+    private long max;
+
+    /**
+     * records a value.
+     *
+     * @param value the value, negative values are counted as 0
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+        counts[index(value)]++;
+        count++;
+        sum += value;
+        max = Math.max(max, value);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * gets the mean of all recorded values.
+     *
+     * @return the mean, or 0 if nothing was recorded
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * gets the value that the given share of the recorded values does not exceed.
+     *
+     * @param percent the percentile, from 0 to 100
+     * @return the upper bound of the bucket holding the percentile, or 0 if nothing was recorded
+     */
+    public long percentile(double percent) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percent / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(max, upperBound(i));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * gets the bucket of a value. values below SUB_BUCKETS get a bucket of their own,
+     * larger ones are bucketed by their highest bit and the SUB_BUCKET_BITS bits below it.
+     */
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + subBucket;
+    }
+
+    /**
+     * gets the largest value that falls into a bucket.
+     */
+    private static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = (index >>> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+        long subBucket = index & (SUB_BUCKETS - 1);
+        return ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,97 @@
+package xdeolit00;
+
+/**
+ * this class is an immutable template of a level as it was loaded.
+ * it holds the initial board and the starting positions of Pacman and the ghosts.
+ * every game gets its own copy of the board, which shares the data of the template until the game changes it,
+ * so starting or restarting a level is cheap even for very large boards.
+ */
+class Level {
+    private final String id;
+    private final Board board;
+    private final int pacmanRow, pacmanCol;
+    private final int[] ghostRows, ghostCols;
+    private NavigationGraph navigation; // built on first use, most games are never navigated
+
+    /**
+     * constructs a level template. the board must not be modified afterwards.
+     *
+     * @param id the name the level was loaded by
+     * @param board the initial tiles and pellets
+     * @param pacmanRow the starting row of Pacman
+     * @param pacmanCol the starting column of Pacman
+     * @param ghostRows the starting rows of the ghosts
+     * @param ghostCols the starting columns of the ghosts, in the same order as the rows
+     */
+    Level(String id, Board board, int pacmanRow, int pacmanCol, int[] ghostRows, int[] ghostCols) {
+        this.id = id;
+        this.board = board;
+        board.markShared(); // from now on the template is only read, also when games copy it concurrently
+        this.pacmanRow = pacmanRow;
+        this.pacmanCol = pacmanCol;
+        this.ghostRows = ghostRows.clone();
+        this.ghostCols = ghostCols.clone();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * creates a fresh board for a new game on this level.
+     *
+     * @return a copy-on-write copy of the initial board
+     */
+    public Board newBoard() {
+        return new Board(board);
+    }
+
+    /**
+     * gets the initial board of the level, which must be treated as read-only.
+     *
+     * @return the template board
+     */
+    Board getBoard() {
+        return board;
+    }
+
+    /**
+     * gets the graph of junctions and corridors of the level, building it the first time it is needed.
+     *
+     * @return the graph, shared by all games on this level
+     */
+    public synchronized NavigationGraph getNavigation() {
+        if (navigation == null) {
+            navigation = new NavigationGraph(board);
+        }
+        return navigation;
+    }
+
+    public int getRows() {
+        return board.getRows();
+    }
+
+    public int getCols() {
+        return board.getCols();
+    }
+
+    public int getPacmanRow() {
+        return pacmanRow;
+    }
+
+    public int getPacmanCol() {
+        return pacmanCol;
+    }
+
+    public int getGhostCount() {
+        return ghostRows.length;
+    }
+
+    public int getGhostRow(int ghost) {
+        return ghostRows[ghost];
+    }
+
+    public int getGhostCol(int ghost) {
+        return ghostCols[ghost];
+    }
+}
@@ -0,0 +1,302 @@
+package xdeolit00;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * this class loads levels and keeps them cached as immutable Level templates.
+ * a level is named by a path on the file system or, if no such file exists, by a resource on the classpath,
+ * so the bundled levels also work when the game is packaged in a jar. ids starting with "gen:" name
+ * mazes built by the MazeGenerator.
+ * levels are read either from the text format or from a compact binary format that LevelLoader can compile
+ * them to. binary files are memory-mapped, which keeps loading very large boards cheap.
+ *
+ * the text format starts with a line holding the number of rows and columns, followed by one line per row
+ * with a character per cell: 'W' wall, 'G' gate, 'K' key, 'o' pellet, '.' empty floor,
+ * 'P' Pacman's start (exactly one) and 'C' a ghost's start.
+ */
+class LevelLoader {
+    private static final int MAGIC = 0x5041434C; // "PACL"
+    private static final short VERSION = 1;
+    // the largest board that is loaded, boards are indexed with ints and hold a byte per cell
+    static final long MAX_CELLS = 1L << 28;
+
+    private static final Map<String, Level> cache = new ConcurrentHashMap<>();
+
+    private LevelLoader() {
+    }
+
+    /**
+     * gets a level, loading and caching it on first use.
+     *
+     * @param id the file path or classpath resource of the level
+     * @return the level template
+     * @throws IOException if the level cannot be found, read or is malformed
+     */
+    public static Level load(String id) throws IOException {
+        Level level = cache.get(id);
+        if (level == null) {
+            level = read(id);
+            cache.put(id, level);
+        }
+        return level;
+    }
+
+    /**
+     * removes a level from the cache, so the next load reads it again.
+     *
+     * @param id the name the level was loaded by
+     */
+    public static void invalidate(String id) {
+        cache.remove(id);
+    }
+
+    /**
+     * reads a level again and replaces the cached one, e.g. after its file was edited.
+     * games already running on the old level keep it.
+     *
+     * @param id the file path or classpath resource of the level
+     * @return the level template that is cached from now on
+     * @throws IOException if the level cannot be found, read or is malformed, the cached level is kept then
+     */
+    public static Level reload(String id) throws IOException {
+        Level level = read(id);
+        cache.put(id, level);
+        return level;
+    }
+
+    /**
+     * reads a level without using the cache.
+     *
+     * @param id the file path or classpath resource of the level
+     * @return the level template
+     * @throws IOException if the level cannot be found, read or is malformed
+     */
+    public static Level read(String id) throws IOException {
+        if (id.startsWith(MazeGenerator.PREFIX)) {
+            try {
+                return MazeGenerator.generate(id);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+        Path path = Path.of(id);
+        if (Files.isRegularFile(path)) {
+            if (isBinary(path)) {
+                // map the file instead of copying it through a stream
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                    return readBinary(id, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+                }
+            }
+            try (InputStream in = Files.newInputStream(path)) {
+                return parse(id, in);
+            }
+        }
+
+        InputStream resource = LevelLoader.class.getClassLoader().getResourceAsStream(id);
+        if (resource == null) {
+            throw new IOException("level not found: " + id);
+        }
+        try (InputStream in = resource) {
+            byte[] data = in.readAllBytes();
+            if (data.length >= 4 && ByteBuffer.wrap(data).getInt() == MAGIC) {
+                return readBinary(id, ByteBuffer.wrap(data));
+            }
+            return parse(id, new ByteArrayInputStream(data));
+        }
+    }
+
+    /**
+     * parses a level in the text format and validates its dimensions and tiles.
+     *
+     * @param id the name of the level, used in error messages
+     * @param in the text to parse
+     * @return the level template
+     * @throws IOException if reading fails or the level is malformed
+     */
+    public static Level parse(String id, InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String header = reader.readLine();
+        if (header == null) {
+            throw new IOException(id + ": empty level file");
+        }
+        String[] dimensions = header.trim().split("\\s+");
+        int rows, cols;
+        try {
+            rows = Integer.parseInt(dimensions[0]);
+            cols = Integer.parseInt(dimensions[1]);
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new IOException(id + ": first line must hold the number of rows and columns");
+        }
+        if (rows <= 0 || cols <= 0) {
+            throw new IOException(id + ": the board must have at least one row and column");
+        }
+        if ((long) rows * cols > MAX_CELLS) {
+            throw new IOException(id + ": " + rows + "x" + cols + " is larger than " + MAX_CELLS + " cells");
+        }
+
+        Board board = new Board(rows, cols);
+        int pacmanRow = -1, pacmanCol = -1;
+        List<Integer> ghostRows = new ArrayList<>();
+        List<Integer> ghostCols = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            String line = reader.readLine();
+            if (line == null) {
+                throw new IOException(id + ": expected " + rows + " rows, found " + i);
+            }
+            line = line.trim();
+            if (line.length() != cols) {
+                throw new IOException(id + ": row " + (i + 1) + " has " + line.length() + " cells, expected " + cols);
+            }
+            for (int j = 0; j < cols; j++) {
+                switch (line.charAt(j)) {
+                    case 'W':
+                        board.setTile(i, j, Board.WALL); break;
+                    case 'G':
+                        board.setTile(i, j, Board.GATE); break;
+                    case 'K':
+                        board.setTile(i, j, Board.KEY); break;
+                    case 'o':
+                        board.setPellet(i, j, true); break;
+                    case '.':
+                        break;
+                    case 'P':
+                        if (pacmanRow != -1) {
+                            throw new IOException(id + ": more than one Pacman at row " + (i + 1));
+                        }
+                        pacmanRow = i;
+                        pacmanCol = j; break;
+                    case 'C':
+                        ghostRows.add(i);
+                        ghostCols.add(j); break;
+                    default:
+                        throw new IOException(id + ": unknown tile '" + line.charAt(j) + "' at row " + (i + 1)
+                                + ", column " + (j + 1));
+                }
+            }
+        }
+        if (pacmanRow == -1) {
+            throw new IOException(id + ": the level has no Pacman");
+        }
+        return new Level(id, board, pacmanRow, pacmanCol,
+                ghostRows.stream().mapToInt(Integer::intValue).toArray(),
+                ghostCols.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    /**
+     * writes a level in the binary format.
+     *
+     * @param level the level to write
+     * @param out the stream to write to, it is not closed
+     * @throws IOException if writing fails
+     */
+    public static void write(Level level, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeShort(VERSION);
+        data.writeInt(level.getRows());
+        data.writeInt(level.getCols());
+        data.writeInt(level.getPacmanRow());
+        data.writeInt(level.getPacmanCol());
+        data.writeInt(level.getGhostCount());
+        for (int i = 0; i < level.getGhostCount(); i++) {
+            data.writeInt(level.getGhostRow(i));
+            data.writeInt(level.getGhostCol(i));
+        }
+        level.getBoard().writeTo(data);
+        data.flush();
+    }
+
+    /**
+     * compiles a level into the binary format.
+     *
+     * @param source the file path or classpath resource of the level
+     * @param target the file to write the binary level to
+     * @throws IOException if the level cannot be read or the target cannot be written
+     */
+    public static void compile(String source, Path target) throws IOException {
+        Level level = read(source);
+        try (OutputStream out = Files.newOutputStream(target)) {
+            write(level, out);
+        }
+    }
+
+    /**
+     * reads a level in the binary format.
+     *
+     * @param id the name of the level
+     * @param in the buffer holding the level, positioned at the magic number
+     * @return the level template
+     * @throws IOException if the data is not a valid binary level
+     */
+    private static Level readBinary(String id, ByteBuffer in) throws IOException {
+        try {
+            if (in.getInt() != MAGIC || in.getShort() != VERSION) {
+                throw new IOException(id + ": not a binary level of version " + VERSION);
+            }
+            int rows = in.getInt();
+            int cols = in.getInt();
+            int pacmanRow = in.getInt();
+            int pacmanCol = in.getInt();
+            int ghosts = in.getInt();
+            if (rows <= 0 || cols <= 0 || (long) rows * cols > MAX_CELLS || ghosts < 0 || pacmanRow < 0
+                    || pacmanRow >= rows || pacmanCol < 0 || pacmanCol >= cols) {
+                throw new IOException(id + ": corrupt level header");
+            }
+            // check the size before anything is allocated for it
+            int cells = rows * cols;
+            int words = (cells + 63) >>> 6;
+            if (in.remaining() != ghosts * 8L + cells + words * 8L) {
+                throw new IOException(id + ": binary level of " + rows + "x" + cols + " with " + ghosts
+                        + " ghosts has " + in.remaining() + " bytes after the header");
+            }
+            int[] ghostRows = new int[ghosts];
+            int[] ghostCols = new int[ghosts];
+            for (int i = 0; i < ghosts; i++) {
+                ghostRows[i] = in.getInt();
+                ghostCols[i] = in.getInt();
+                if (ghostRows[i] < 0 || ghostRows[i] >= rows || ghostCols[i] < 0 || ghostCols[i] >= cols) {
+                    throw new IOException(id + ": ghost " + i + " is outside the board");
+                }
+            }
+            for (int i = 0; i < cells; i++) {
+                byte tile = in.get(in.position() + i);
+                if (tile < Board.FLOOR || tile > Board.KEY) {
+                    throw new IOException(id + ": unknown tile " + tile + " at row " + (i / cols + 1)
+                            + ", column " + (i % cols + 1));
+                }
+            }
+            if (cells % 64 != 0 && in.getLong(in.position() + cells + (words - 1) * 8) >>> (cells % 64) != 0) {
+                throw new IOException(id + ": pellets outside the board");
+            }
+            Board board = Board.readFrom(in, rows, cols);
+            return new Level(id, board, pacmanRow, pacmanCol, ghostRows, ghostCols);
+        } catch (BufferUnderflowException e) {
+            throw new IOException(id + ": binary level is truncated");
+        }
+    }
+
+    private static boolean isBinary(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            byte[] head = in.readNBytes(4);
+            return head.length == 4 && ByteBuffer.wrap(head).getInt() == MAGIC;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package xdeolit00;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * this class watches the file of a level and reports when it was saved, so the level can be reloaded while
+ * it is played. the directory of the file is watched with a WatchService on a thread of its own.
+ * editors often write a file in several steps or replace it with a new one, so a change is only reported
+ * once no more events arrived for SETTLE_MILLIS, and a file that was replaced is reported like one that was written.
+ *
+ * levels are named as in the LevelLoader. a classpath resource can only be watched if it is a file,
+ * e.g. when the game runs from its build directory, and generated mazes cannot be watched at all.
+ */
+class LevelWatcher implements Closeable {
+    private static final long SETTLE_MILLIS = 100;
+
+    private final WatchService service;
+    private final Consumer<String> listener;
+    private final Thread thread;
+    private volatile String levelId; // the watched level, null if none
+    private volatile Path file; // and its file
+
+    /**
+     * constructs a watcher that does not watch any level yet.
+     *
+     * @param listener called with the id of the level on the thread of the watcher whenever its file was changed
+     * @throws IOException if the file system cannot be watched
+     */
+    LevelWatcher(Consumer<String> listener) throws IOException {
+        this.service = FileSystems.getDefault().newWatchService();
+        this.listener = listener;
+        thread = new Thread(this::run, "level-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * starts watching a level instead of the one watched so far.
+     *
+     * @param levelId the file path or classpath resource of the level
+     * @return true if the level is watched, false if it is not a file
+     * @throws IOException if the directory of the level cannot be watched
+     */
+    public boolean watch(String levelId) throws IOException {
+        Path found = find(levelId);
+        if (found == null) {
+            this.levelId = null;
+            this.file = null;
+            return false;
+        }
+        // registering a directory again returns the key it is already watched with
+        found.getParent().register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.file = found;
+        this.levelId = levelId;
+        return true;
+    }
+
+    /**
+     * stops watching and ends the thread of the watcher.
+     */
+    @Override
+    public void close() throws IOException {
+        service.close();
+    }
+
+    /**
+     * finds the file a level is read from, see LevelLoader.read.
+     *
+     * @return the absolute path of the file, or null if the level is not read from a file
+     */
+    private static Path find(String levelId) {
+        if (levelId.startsWith(MazeGenerator.PREFIX)) {
+            return null;
+        }
+        Path path = Path.of(levelId);
+        if (Files.isRegularFile(path)) {
+            return path.toAbsolutePath().normalize();
+        }
+        URL resource = LevelWatcher.class.getClassLoader().getResource(levelId);
+        if (resource == null || !resource.getProtocol().equals("file")) {
+            return null; // e.g. inside the jar
+        }
+        try {
+            return Path.of(resource.toURI()).toAbsolutePath().normalize();
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    /**
+     * the body of the watcher thread: waits for the watched file to change and for the changes to settle.
+     */
+    private void run() {
+        try {
+            while (true) {
+                boolean changed = drain(service.take());
+                WatchKey key;
+                while ((key = service.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    changed |= drain(key);
+                }
+                String changedLevel = levelId;
+                if (changed && changedLevel != null) {
+                    listener.accept(changedLevel);
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // the watcher was closed
+        }
+    }
+
+    /**
+     * takes the events of a key and makes it report further events.
+     *
+     * @return true if one of the events concerned the watched file
+     */
+    private boolean drain(WatchKey key) {
+        boolean changed = false;
+        Path watched = file;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.context() instanceof Path && watched != null
+                    && ((Path) key.watchable()).resolve((Path) event.context()).equals(watched)) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+}
@@ -36,11 +36,37 @@ class MainFrame extends JFrame {
     }
 
     /**
-     * loads a level by reading the level file and initialising the game state.
+     * loads a level and starts a new game on it.
      *
-     * @param filePath the path to the level file
+     * @param levelId the file path or classpath resource of the level
      */
-    public void loadLevel(String filePath) {
-        gamePanel.loadLevel(filePath);
+    public void loadLevel(String levelId) {
+        gamePanel.loadLevel(levelId);
+    }
+
+    /**
+     * turns on watch mode, in which the level being played is reloaded whenever its file is saved.
+     */
+    public void watchLevels() {
+        gamePanel.watchLevels();
+    }
+
+    /**
+     * replays a recorded game.
+     *
+     * @param recording the game to replay
+     * @param speed how many times faster than the recorded game the replay runs
+     */
+    public void replay(Recording recording, double speed) {
+        gamePanel.replay(recording, speed);
+    }
+
+    /**
+     * changes how fast Pacman moves, also in a running game.
+     *
+     * @param speed the time between two moves of Pacman in milliseconds
+     */
+    public void setGameSpeed(int speed) {
+        gamePanel.setGameSpeed(speed);
     }
 }
@@ -0,0 +1,202 @@
+package xdeolit00;
+
+import java.util.Random;
+
+/**
+ * this class generates random mazes of any size for load testing.
+ * the maze is carved with a randomised depth-first search and then has some of its walls knocked out,
+ * so that it contains loops and the ghosts cannot simply trap Pacman in a dead end.
+ * Pacman starts in the top left corner, the key is put on the floor cell furthest away from him
+ * and the gate is placed in the bottom wall. every other floor cell holds a pellet.
+ *
+ * generated levels are named "gen:ROWSxCOLS:SEED" with an optional ":GHOSTS" suffix,
+ * which the LevelLoader understands like any other level id.
+ */
+class MazeGenerator {
+    static final String PREFIX = "gen:";
+    private static final int MIN_SIZE = 5;
+    // share of the inner walls between two corridors that get removed to create loops
+    private static final double BRAID_RATIO = 0.1;
+
+    private MazeGenerator() {
+    }
+
+    /**
+     * builds the id of a generated level.
+     *
+     * @param rows the number of rows
+     * @param cols the number of columns
+     * @param seed the seed of the random generator
+     * @return an id that can be passed to the LevelLoader
+     */
+    public static String id(int rows, int cols, long seed) {
+        return PREFIX + rows + "x" + cols + ":" + seed;
+    }
+
+    /**
+     * gets the size of the maze a "gen:" id describes without generating it, e.g. to refuse ids that are too large.
+     *
+     * @param id the id of the level
+     * @return the number of cells, rows * cols
+     * @throws IllegalArgumentException if the id is malformed
+     */
+    public static long cells(String id) {
+        try {
+            String[] size = id.substring(PREFIX.length()).split(":")[0].split("x");
+            return (long) Integer.parseInt(size[0]) * Integer.parseInt(size[1]);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("expected " + PREFIX + "ROWSxCOLS:SEED[:GHOSTS], got " + id, e);
+        }
+    }
+
+    /**
+     * generates the level described by a "gen:" id.
+     *
+     * @param id the id of the level
+     * @return the generated level
+     * @throws IllegalArgumentException if the id is malformed
+     */
+    public static Level generate(String id) {
+        try {
+            String[] parts = id.substring(PREFIX.length()).split(":");
+            String[] size = parts[0].split("x");
+            int rows = Integer.parseInt(size[0]);
+            int cols = Integer.parseInt(size[1]);
+            long seed = Long.parseLong(parts[1]);
+            int ghosts = parts.length > 2 ? Integer.parseInt(parts[2]) : -1;
+            return generate(id, rows, cols, seed, ghosts);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("expected " + PREFIX + "ROWSxCOLS:SEED[:GHOSTS], got " + id, e);
+        }
+    }
+
+    /**
+     * generates a maze.
+     *
+     * @param id the id given to the level
+     * @param rows the number of rows, at least 5
+     * @param cols the number of columns, at least 5
+     * @param seed the seed of the random generator, the same seed always gives the same maze
+     * @param ghosts the number of ghosts, or a negative number to choose one from the size of the maze
+     * @return the generated level
+     */
+    public static Level generate(String id, int rows, int cols, long seed, int ghosts) {
+        if (rows < MIN_SIZE || cols < MIN_SIZE) {
+            throw new IllegalArgumentException("a maze needs at least " + MIN_SIZE + " rows and columns");
+        }
+        Random random = new Random(seed);
+        Board board = new Board(rows, cols);
+        // the last odd row and column that can still be carved without touching the border
+        int lastRow = (rows - 2) % 2 == 1 ? rows - 2 : rows - 3;
+        int lastCol = (cols - 2) % 2 == 1 ? cols - 2 : cols - 3;
+
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                board.setTile(i, j, Board.WALL);
+            }
+        }
+        carve(board, lastRow, lastCol, random);
+        braid(board, lastRow, lastCol, random);
+
+        // measure distances from Pacman's start to place the key as far away as possible
+        FlowField field = new FlowField(board);
+        field.update(1, 1);
+        int keyRow = 1, keyCol = 1, floorCells = 0;
+        for (int i = 1; i <= lastRow; i++) {
+            for (int j = 1; j <= lastCol; j++) {
+                if (board.tile(i, j) == Board.FLOOR) {
+                    floorCells++;
+                    if (field.distance(i, j) > field.distance(keyRow, keyCol)) {
+                        keyRow = i;
+                        keyCol = j;
+                    }
+                }
+            }
+        }
+
+        // every floor cell except Pacman's start and the key gets a pellet
+        for (int i = 1; i <= lastRow; i++) {
+            for (int j = 1; j <= lastCol; j++) {
+                if (board.tile(i, j) == Board.FLOOR && !(i == 1 && j == 1) && !(i == keyRow && j == keyCol)) {
+                    board.setPellet(i, j, true);
+                }
+            }
+        }
+        board.setTile(keyRow, keyCol, Board.KEY);
+        board.setTile(lastRow + 1, lastCol, Board.GATE); // the bottom right corridor always ends here
+
+        // spread the ghosts over floor cells that are not too close to Pacman
+        if (ghosts < 0) {
+            ghosts = Math.max(1, floorCells / 300);
+        }
+        ghosts = Math.min(ghosts, floorCells / 2);
+        int minDistance = Math.max(1, Math.min(20, field.distance(keyRow, keyCol) / 2));
+        int[] ghostRows = new int[ghosts];
+        int[] ghostCols = new int[ghosts];
+        boolean[] taken = new boolean[rows * cols];
+        for (int placed = 0, attempts = 0; placed < ghosts; attempts++) {
+            if (attempts == 10 * rows * cols) {
+                minDistance = 1; // small mazes may not have enough distant cells
+            }
+            int i = 1 + random.nextInt(lastRow);
+            int j = 1 + random.nextInt(lastCol);
+            if (board.tile(i, j) != Board.WALL && field.distance(i, j) >= minDistance && !taken[i * cols + j]
+                    && !(i == keyRow && j == keyCol)) {
+                taken[i * cols + j] = true;
+                ghostRows[placed] = i;
+                ghostCols[placed] = j;
+                placed++;
+            }
+        }
+        return new Level(id, board, 1, 1, ghostRows, ghostCols);
+    }
+
+    /**
+     * carves corridors between the cells with odd coordinates using an iterative depth-first search.
+     */
+    private static void carve(Board board, int lastRow, int lastCol, Random random) {
+        int cols = board.getCols();
+        int[] stack = new int[((lastRow + 1) / 2) * ((lastCol + 1) / 2)];
+        int[] options = new int[4];
+        int size = 0;
+        board.setTile(1, 1, Board.FLOOR);
+        stack[size++] = cols + 1;
+        while (size > 0) {
+            int cell = stack[size - 1];
+            int row = cell / cols;
+            int col = cell % cols;
+
+            // collect the neighbouring cells two steps away that have not been carved yet
+            int count = 0;
+            if (row - 2 >= 1 && board.tile(row - 2, col) == Board.WALL) options[count++] = 0;
+            if (row + 2 <= lastRow && board.tile(row + 2, col) == Board.WALL) options[count++] = 1;
+            if (col - 2 >= 1 && board.tile(row, col - 2) == Board.WALL) options[count++] = 2;
+            if (col + 2 <= lastCol && board.tile(row, col + 2) == Board.WALL) options[count++] = 3;
+            if (count == 0) {
+                size--; // dead end, go back
+                continue;
+            }
+
+            int option = options[random.nextInt(count)];
+            int rowStep = option == 0 ? -1 : option == 1 ? 1 : 0;
+            int colStep = option == 2 ? -1 : option == 3 ? 1 : 0;
+            board.setTile(row + rowStep, col + colStep, Board.FLOOR);
+            board.setTile(row + 2 * rowStep, col + 2 * colStep, Board.FLOOR);
+            stack[size++] = (row + 2 * rowStep) * cols + col + 2 * colStep;
+        }
+    }
+
+    /**
+     * removes some of the walls that separate two corridors, turning the perfect maze into one with loops.
+     */
+    private static void braid(Board board, int lastRow, int lastCol, Random random) {
+        for (int i = 1; i <= lastRow; i++) {
+            // walls between two corridors sit where exactly one of the coordinates is even
+            for (int j = (i % 2 == 1) ? 2 : 1; j <= lastCol; j += 2) {
+                if (board.tile(i, j) == Board.WALL && random.nextDouble() < BRAID_RATIO) {
+                    board.setTile(i, j, Board.FLOOR);
+                }
+            }
+        }
+    }
+}
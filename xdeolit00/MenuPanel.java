@@ -21,23 +21,30 @@ class MenuPanel extends JPanel {
         JButton level1Button = new JButton("Easy");
         level1Button.setFocusable(false);
         level1Button.addActionListener(e ->
-                mainFrame.loadLevel(getClass().getClassLoader().getResource("levels/level1.txt").getPath()));
+                mainFrame.loadLevel("levels/level1.txt"));
         add(level1Button);
 
         // button for medium level
         JButton level2Button = new JButton("Medium");
         level2Button.setFocusable(false);
         level2Button.addActionListener(e ->
-                mainFrame.loadLevel(getClass().getClassLoader().getResource("levels/level2.txt").getPath()));
+                mainFrame.loadLevel("levels/level2.txt"));
         add(level2Button);
 
         // button for hard level
         JButton level3Button = new JButton("Hard");
         level3Button.setFocusable(false);
         level3Button.addActionListener(e ->
-                mainFrame.loadLevel(getClass().getClassLoader().getResource("levels/level3.txt").getPath()));
+                mainFrame.loadLevel("levels/level3.txt"));
         add(level3Button);
 
+        // button for a large randomly generated maze
+        JButton mazeButton = new JButton("Maze");
+        mazeButton.setFocusable(false);
+        mazeButton.addActionListener(e ->
+                mainFrame.loadLevel(MazeGenerator.id(201, 201, System.nanoTime())));
+        add(mazeButton);
+
         // label for pacman's speed slider
         JLabel speedLabel = new JLabel("Pacman Speed:");
         add(speedLabel);
@@ -46,7 +53,7 @@ class MenuPanel extends JPanel {
         JSlider speedSlider = new JSlider(50, 300, 300);
         speedSlider.setFocusable(false);
         speedSlider.setInverted(true);
-        speedSlider.addChangeListener(e -> GamePanel.setGameSpeed(speedSlider.getValue()));
+        speedSlider.addChangeListener(e -> mainFrame.setGameSpeed(speedSlider.getValue()));
         add(speedSlider);
     }
 }
\ No newline at end of file
@@ -0,0 +1,244 @@
+package xdeolit00;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * this class collects performance metrics of the running game: how long the logic ticks, the ghost moves
+ * and the frames take to render, how late the GameLoop wakes up for a frame, and how much the loop thread
+ * allocates per frame. everything is recorded into LatencyHistograms on the loop thread.
+ *
+ * the same measurements are emitted as JFR events in the "Pacman" category, so a flight recording
+ * (java -XX:StartFlightRecording ...) shows them next to the GC and safepoint events of the JVM.
+ * the events are only created while JFR records them.
+ */
+class Metrics {
+    // a frame of the game loop that starts this late counts as a stall, e.g. caused by a long GC pause
+    static final long STALL_NANOS = 100_000_000L;
+
+    private final LatencyHistogram ticks = new LatencyHistogram();
+    private final LatencyHistogram ghosts = new LatencyHistogram();
+    private final LatencyHistogram paints = new LatencyHistogram();
+    private final LatencyHistogram lateness = new LatencyHistogram();
+    private final LatencyHistogram allocation = new LatencyHistogram();
+    private final LatencyHistogram input = new LatencyHistogram();
+    private long stalls;
+
+    private final com.sun.management.ThreadMXBean threads;
+    private long lastAllocatedBytes = -1;
+
+    private static final EventType TICK_EVENT = register(TickEvent.class);
+    private static final EventType PAINT_EVENT = register(PaintEvent.class);
+    private static final EventType STALL_EVENT = register(StallEvent.class);
+
+    /**
+     * constructs empty metrics.
+     */
+    Metrics() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        // allocation counters are an extension of HotSpot and may be missing on other JVMs
+        if (bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            threads = (com.sun.management.ThreadMXBean) bean;
+            threads.setThreadAllocatedMemoryEnabled(true);
+        } else {
+            threads = null;
+        }
+    }
+
+    /**
+     * records a logic tick of the game.
+     *
+     * @param start the System.nanoTime at which the tick started
+     * @param tick the number of the tick
+     */
+    public void recordTick(long start, long tick) {
+        long nanos = System.nanoTime() - start;
+        ticks.record(nanos);
+        if (TICK_EVENT.isEnabled()) {
+            TickEvent event = new TickEvent();
+            event.tick = tick;
+            event.nanos = nanos;
+            event.commit();
+        }
+    }
+
+    /**
+     * records a move of all ghosts.
+     *
+     * @param start the System.nanoTime at which the ghosts started moving
+     */
+    public void recordGhosts(long start) {
+        ghosts.record(System.nanoTime() - start);
+    }
+
+    /**
+     * records how long it took from an input of the player until Pacman moved in the new direction.
+     *
+     * @param nanos the latency in nanoseconds
+     */
+    public void recordInput(long nanos) {
+        input.record(nanos);
+    }
+
+    /**
+     * records a rendered frame of the game panel.
+     *
+     * @param start the System.nanoTime at which rendering started
+     * @param cells the number of cells that were in view
+     */
+    public void recordPaint(long start, int cells) {
+        long nanos = System.nanoTime() - start;
+        paints.record(nanos);
+        if (PAINT_EVENT.isEnabled()) {
+            PaintEvent event = new PaintEvent();
+            event.cells = cells;
+            event.nanos = nanos;
+            event.commit();
+        }
+    }
+
+    /**
+     * records a wake-up of the game loop, which starts a new frame.
+     * the allocation of the calling thread since the previous wake-up is counted towards the frame that ended.
+     *
+     * @param late how much later than scheduled the frame started, in nanoseconds
+     */
+    public void recordFrame(long late) {
+        lateness.record(late);
+        if (late >= STALL_NANOS) {
+            stalls++;
+            if (STALL_EVENT.isEnabled()) {
+                StallEvent event = new StallEvent();
+                event.late = late;
+                event.commit();
+            }
+        }
+        if (threads != null) {
+            long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            if (lastAllocatedBytes >= 0) {
+                allocation.record(allocated - lastAllocatedBytes);
+            }
+            lastAllocatedBytes = allocated;
+        }
+    }
+
+    /**
+     * builds a single line summarising the metrics, for the on-screen overlay.
+     *
+     * @return the summary
+     */
+    public String summary() {
+        return String.format("tick p99 %s  paint p99 %s  late p99 %s  input p99 %s  stalls %d  alloc %s/frame  gc %d",
+                millis(ticks.percentile(99)), millis(paints.percentile(99)), millis(lateness.percentile(99)),
+                millis(input.percentile(99)), stalls, bytes(allocation.percentile(50)), gcCount());
+    }
+
+    /**
+     * writes all metrics as a text report.
+     *
+     * @param out the writer to write to
+     */
+    public void report(PrintWriter out) {
+        report(out, "logic tick", ticks, true);
+        report(out, "ghost move", ghosts, true);
+        report(out, "paint", paints, true);
+        report(out, "timer lateness", lateness, true);
+        report(out, "input latency", input, true);
+        report(out, "allocation per frame", allocation, false);
+        out.printf("stalls over %s: %d%n", millis(STALL_NANOS), stalls);
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            out.printf("gc %s: %d collections, %d ms%n", gc.getName(), gc.getCollectionCount(), gc.getCollectionTime());
+        }
+        out.flush();
+    }
+
+    /**
+     * writes the report to a file.
+     *
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void dump(Path file) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+            report(out);
+        }
+    }
+
+    private static void report(PrintWriter out, String name, LatencyHistogram histogram, boolean time) {
+        out.printf("%-21s count %d, mean %s, p50 %s, p90 %s, p99 %s, p99.9 %s, max %s%n", name, histogram.getCount(),
+                format((long) histogram.getMean(), time), format(histogram.percentile(50), time),
+                format(histogram.percentile(90), time), format(histogram.percentile(99), time),
+                format(histogram.percentile(99.9), time), format(histogram.getMax(), time));
+    }
+
+    private static String format(long value, boolean time) {
+        return time ? millis(value) : bytes(value);
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.2fms", nanos / 1e6);
+    }
+
+    private static String bytes(long bytes) {
+        return bytes < 1024 ? bytes + "B" : (bytes / 1024) + "KB";
+    }
+
+    private static EventType register(Class<? extends Event> event) {
+        FlightRecorder.register(event);
+        return EventType.getEventType(event);
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    @Name("xdeolit00.Tick")
+    @Label("Game Tick")
+    @Category("Pacman")
+    static class TickEvent extends Event {
+        @Label("Tick")
+        long tick;
+
+        @Label("Time Taken")
+        @Timespan(Timespan.NANOSECONDS)
+        long nanos;
+    }
+
+    @Name("xdeolit00.Paint")
+    @Label("Paint")
+    @Category("Pacman")
+    static class PaintEvent extends Event {
+        @Label("Cells")
+        int cells;
+
+        @Label("Time Taken")
+        @Timespan(Timespan.NANOSECONDS)
+        long nanos;
+    }
+
+    @Name("xdeolit00.Stall")
+    @Label("Game Loop Stall")
+    @Category("Pacman")
+    static class StallEvent extends Event {
+        @Label("Late")
+        @Timespan(Timespan.NANOSECONDS)
+        long late;
+    }
+}
@@ -0,0 +1,247 @@
+package xdeolit00;
+
+import java.util.Arrays;
+
+/**
+ * this class describes the maze of a level as a graph of junctions connected by corridors.
+ * every cell that is not a wall and does not have exactly two open neighbours is a node: junctions,
+ * dead ends and open areas. gates are nodes as well, so that a closed gate only blocks a node and never
+ * a part of an edge. the cells in between form the corridors, which become edges weighted by their length,
+ * bends included. a maze of long corridors therefore has far fewer nodes than cells, and searching the graph
+ * (see Navigator) is much cheaper than searching the grid.
+ *
+ * the graph only depends on the walls and gates, which do not change during a game, so a graph is built
+ * once per level, see Level.getNavigation, and shared by all games on it. it is immutable once built.
+ * directions are numbered in the order Ghost uses: up, down, left, right.
+ */
+class NavigationGraph {
+    static final int[] ROW_OFFSETS = {-1, 1, 0, 0};
+    static final int[] COL_OFFSETS = {0, 0, -1, 1};
+    static final int NONE = -1;
+
+    private final Board board;
+    private final int rows, cols;
+    private final int[] nodeAt; // the node of each cell, NONE for walls and corridor cells
+
+    private int nodeCount;
+    private int[] nodeCells = new int[64];
+    private int[] nodeEdges = new int[256]; // the edge leaving each node in each direction, or NONE
+
+    // edge e runs from node edgeFrom[e], leaving it in direction edgeFromDirection[e], to node edgeTo[e],
+    // which it enters in the opposite of edgeToDirection[e], edgeLength[e] steps later
+    private int edgeCount;
+    private int[] edgeFrom = new int[64], edgeFromDirection = new int[64];
+    private int[] edgeTo = new int[64], edgeToDirection = new int[64];
+    private int[] edgeLength = new int[64];
+
+    /**
+     * builds the graph of a board.
+     *
+     * @param board the board, usually the template of a level
+     */
+    NavigationGraph(Board board) {
+        this.board = board;
+        this.rows = board.getRows();
+        this.cols = board.getCols();
+        this.nodeAt = new int[rows * cols];
+        Arrays.fill(nodeAt, NONE);
+
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                if (isOpen(row, col) && (board.tile(row, col) == Board.GATE || openNeighbours(row, col) != 2)) {
+                    addNode(row * cols + col);
+                }
+            }
+        }
+        boolean[] walked = new boolean[rows * cols];
+        connect(0, walked);
+
+        // corridors that form a closed loop have no node yet, one of their cells becomes one
+        for (int cell = 0; cell < rows * cols; cell++) {
+            if (!walked[cell] && nodeAt[cell] == NONE && isOpen(cell / cols, cell % cols)) {
+                int first = nodeCount;
+                addNode(cell);
+                connect(first, walked);
+            }
+        }
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * gets the node on a cell.
+     *
+     * @param cell the index of the cell, row * cols + col
+     * @return the node, or NONE if the cell is a wall or part of a corridor
+     */
+    public int nodeAt(int cell) {
+        return nodeAt[cell];
+    }
+
+    /**
+     * gets the cell of a node.
+     *
+     * @param node the node
+     * @return the index of the cell, row * cols + col
+     */
+    public int cellOf(int node) {
+        return nodeCells[node];
+    }
+
+    /**
+     * checks if a node is a gate, which can only be entered with the key.
+     *
+     * @param node the node
+     * @return true for a gate
+     */
+    public boolean isGate(int node) {
+        int cell = nodeCells[node];
+        return board.tile(cell / cols, cell % cols) == Board.GATE;
+    }
+
+    /**
+     * gets the edge leaving a node in a direction.
+     *
+     * @param node the node
+     * @param direction the direction, 0 to 3
+     * @return the edge, or NONE if there is a wall in that direction
+     */
+    public int edge(int node, int direction) {
+        return nodeEdges[node * 4 + direction];
+    }
+
+    /**
+     * gets the node at the other end of an edge.
+     *
+     * @param edge the edge
+     * @param node the node at one end of the edge
+     * @param direction the direction the edge leaves that node in, which tells the ends of a loop apart
+     * @return the node at the other end
+     */
+    public int otherEnd(int edge, int node, int direction) {
+        return edgeFrom[edge] == node && edgeFromDirection[edge] == direction ? edgeTo[edge] : edgeFrom[edge];
+    }
+
+    /**
+     * gets the number of steps along an edge.
+     *
+     * @param edge the edge
+     * @return the length, at least 1
+     */
+    public int length(int edge) {
+        return edgeLength[edge];
+    }
+
+    /**
+     * checks if a cell can be walked on, ignoring whether a gate is closed.
+     *
+     * @param row the row of the cell
+     * @param col the column of the cell
+     * @return true if the cell is inside the board and not a wall
+     */
+    public boolean isOpen(int row, int col) {
+        return board.inBounds(row, col) && !board.isWall(row, col);
+    }
+
+    /**
+     * gets the direction in which a corridor goes on, without going back the way it came.
+     *
+     * @param cell the corridor cell
+     * @param direction the direction of the step that entered the cell
+     * @return the direction of the next step
+     */
+    public int continueFrom(int cell, int direction) {
+        int row = cell / cols;
+        int col = cell % cols;
+        int back = direction ^ 1; // up and down, left and right differ in the lowest bit
+        for (int next = 0; next < 4; next++) {
+            if (next != back && isOpen(row + ROW_OFFSETS[next], col + COL_OFFSETS[next])) {
+                return next;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * adds a cell as a node.
+     */
+    private void addNode(int cell) {
+        if (nodeCount == nodeCells.length) {
+            nodeCells = Arrays.copyOf(nodeCells, nodeCount * 2);
+            nodeEdges = Arrays.copyOf(nodeEdges, nodeCount * 8);
+        }
+        nodeCells[nodeCount] = cell;
+        Arrays.fill(nodeEdges, nodeCount * 4, nodeCount * 4 + 4, NONE);
+        nodeAt[cell] = nodeCount++;
+    }
+
+    /**
+     * walks the corridors leaving the nodes from the given one on and adds them as edges.
+     */
+    private void connect(int firstNode, boolean[] walked) {
+        for (int node = firstNode; node < nodeCount; node++) {
+            int start = nodeCells[node];
+            for (int direction = 0; direction < 4; direction++) {
+                int row = start / cols + ROW_OFFSETS[direction];
+                int col = start % cols + COL_OFFSETS[direction];
+                if (nodeEdges[node * 4 + direction] != NONE || !isOpen(row, col)) {
+                    continue;
+                }
+                // follow the corridor to the next node
+                int cell = row * cols + col;
+                int arrived = direction;
+                int length = 1;
+                while (nodeAt[cell] == NONE) {
+                    walked[cell] = true;
+                    arrived = continueFrom(cell, arrived);
+                    cell += ROW_OFFSETS[arrived] * cols + COL_OFFSETS[arrived];
+                    length++;
+                }
+                addEdge(node, direction, nodeAt[cell], arrived ^ 1, length);
+            }
+        }
+    }
+
+    private void addEdge(int from, int fromDirection, int to, int toDirection, int length) {
+        if (edgeCount == edgeFrom.length) {
+            int capacity = edgeCount * 2;
+            edgeFrom = Arrays.copyOf(edgeFrom, capacity);
+            edgeFromDirection = Arrays.copyOf(edgeFromDirection, capacity);
+            edgeTo = Arrays.copyOf(edgeTo, capacity);
+            edgeToDirection = Arrays.copyOf(edgeToDirection, capacity);
+            edgeLength = Arrays.copyOf(edgeLength, capacity);
+        }
+        edgeFrom[edgeCount] = from;
+        edgeFromDirection[edgeCount] = fromDirection;
+        edgeTo[edgeCount] = to;
+        edgeToDirection[edgeCount] = toDirection;
+        edgeLength[edgeCount] = length;
+        nodeEdges[from * 4 + fromDirection] = edgeCount;
+        nodeEdges[to * 4 + toDirection] = edgeCount;
+        edgeCount++;
+    }
+
+    private int openNeighbours(int row, int col) {
+        int open = 0;
+        for (int direction = 0; direction < 4; direction++) {
+            if (isOpen(row + ROW_OFFSETS[direction], col + COL_OFFSETS[direction])) {
+                open++;
+            }
+        }
+        return open;
+    }
+}
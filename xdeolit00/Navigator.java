@@ -0,0 +1,380 @@
+package xdeolit00;
+
+import java.util.Arrays;
+
+/**
+ * this class walks Pacman to a destination cell along the shortest route, for click-to-move.
+ * routes are planned with an A* search over the NavigationGraph of the level, with the Manhattan distance
+ * to the destination as the estimate. the planned route is kept as a list of cells and followed step by step,
+ * it is only planned again when the destination changes, when Pacman collects the key, which opens the gate
+ * and may open a shorter route, or when Pacman left the route, e.g. because the player steered him away.
+ *
+ * the search state is reused between searches, so a navigator must only be used by one thread at a time.
+ */
+class Navigator {
+    private static final int NONE = NavigationGraph.NONE;
+    private static final int START = -2; // the parent of the nodes reached from the start of the route
+
+    private final NavigationGraph graph;
+    private final int cols;
+
+    // the state of the search, a node counts as seen if its stamp is the number of the current search
+    private final int[] cost, parent, parentDirection, stamp;
+    private int search;
+    private long[] heap = new long[64]; // estimated total cost in the upper half, node in the lower half
+    private int heapSize;
+
+    // the ends of the corridors the start and the destination lie in, see findEnds
+    private final int[] startEnds = new int[2], startSteps = new int[2], startDirections = new int[2];
+    private final int[] goalEnds = new int[2], goalSteps = new int[2], goalDirections = new int[2];
+
+    // the cached route from the cell it was planned from to the destination
+    private int destination = NONE;
+    private int[] route = new int[64];
+    private int routeLength; // 0 if no route is planned
+    private int position; // the index of Pacman's cell in the route
+    private boolean routeKey; // whether Pacman had the key when the route was planned
+
+    /**
+     * constructs a navigator for the mazes of a level.
+     *
+     * @param graph the graph of the level
+     */
+    Navigator(NavigationGraph graph) {
+        this.graph = graph;
+        this.cols = graph.getCols();
+        cost = new int[graph.getNodeCount()];
+        parent = new int[graph.getNodeCount()];
+        parentDirection = new int[graph.getNodeCount()];
+        stamp = new int[graph.getNodeCount()];
+    }
+
+    /**
+     * sets the cell to walk Pacman to. the route is planned at the next call to next.
+     *
+     * @param row the row of the destination
+     * @param col the column of the destination
+     */
+    public void setDestination(int row, int col) {
+        int cell = row * cols + col;
+        if (cell != destination) {
+            destination = cell;
+            routeLength = 0;
+        }
+    }
+
+    /**
+     * checks if Pacman is being walked somewhere.
+     *
+     * @return true until Pacman reaches the destination, it turns out to be unreachable or clear is called
+     */
+    public boolean hasDestination() {
+        return destination != NONE;
+    }
+
+    /**
+     * forgets the destination and the route to it.
+     */
+    public void clear() {
+        destination = NONE;
+        routeLength = 0;
+    }
+
+    /**
+     * decides which way Pacman has to go next to follow the route, planning it first if necessary.
+     * the destination is forgotten once Pacman has reached it or if it cannot be reached.
+     *
+     * @param state the game
+     * @return the direction of Pacman's next step, or NONE if there is no destination
+     */
+    public Direction next(GameState state) {
+        if (destination == NONE) {
+            return Direction.NONE;
+        }
+        int cell = state.getPlayerRow() * cols + state.getPlayerCol();
+        if (cell == destination) {
+            clear();
+            return Direction.NONE;
+        }
+        if (routeLength > 0 && routeKey == state.hasKey() && route[position] != cell) {
+            if (position + 1 < routeLength && route[position + 1] == cell) {
+                position++;
+            } else {
+                routeLength = 0; // Pacman left the route
+            }
+        }
+        if (routeLength == 0 || routeKey != state.hasKey()) {
+            if (plan(cell, destination, state.hasKey()) < 0) {
+                clear();
+                return Direction.NONE;
+            }
+        }
+        return direction(route[position], route[position + 1]);
+    }
+
+    /**
+     * plans the shortest route between two cells and keeps it as the route to follow.
+     *
+     * @param from the index of the cell the route starts at, row * cols + col
+     * @param to the index of the cell the route ends at
+     * @param hasKey true if the gate is open
+     * @return the number of steps of the route, or -1 if the cell cannot be reached
+     */
+    int plan(int from, int to, boolean hasKey) {
+        routeLength = 0;
+        position = 0;
+        routeKey = hasKey;
+        if (!enterable(to, hasKey)) {
+            return -1;
+        }
+        if (from == to) {
+            append(from);
+            return 0;
+        }
+        search++;
+        heapSize = 0;
+        int goalNode = graph.nodeAt(to);
+        int goalEndCount = goalNode == NONE ? findEnds(to, to, goalEnds, goalSteps, goalDirections) : 0;
+
+        // a route inside the corridor of the start does not touch any node
+        int best = Integer.MAX_VALUE;
+        int bestEnd = NONE; // the node the best route reaches the destination from, NONE for the corridor
+        int bestDirection = NONE;
+        int startNode = graph.nodeAt(from);
+        if (startNode != NONE) {
+            reach(startNode, 0, START, NONE, to);
+        } else {
+            int ends = findEnds(from, to, startEnds, startSteps, startDirections);
+            for (int i = 0; i < ends; i++) {
+                if (startEnds[i] == NONE) {
+                    best = startSteps[i]; // the destination lies on the way to this end
+                    bestDirection = startDirections[i];
+                } else if (enterable(graph.cellOf(startEnds[i]), hasKey)) {
+                    reach(startEnds[i], startSteps[i], START, i, to);
+                }
+            }
+        }
+
+        // A* over the nodes
+        while (heapSize > 0) {
+            long top = pop();
+            int node = (int) top;
+            int g = cost[node];
+            if ((int) (top >>> 32) != g + estimate(node, to)) {
+                continue; // reached more cheaply since it was queued
+            }
+            if (g + estimate(node, to) >= best) {
+                break;
+            }
+            if (node == goalNode) {
+                best = g;
+                bestEnd = node;
+                break;
+            }
+            for (int i = 0; i < goalEndCount; i++) {
+                if (goalEnds[i] == node && g + goalSteps[i] < best) {
+                    best = g + goalSteps[i];
+                    bestEnd = node;
+                    bestDirection = goalDirections[i] ^ 1; // back along the way the end was found
+                }
+            }
+            for (int direction = 0; direction < 4; direction++) {
+                int edge = graph.edge(node, direction);
+                if (edge == NONE) {
+                    continue;
+                }
+                int next = graph.otherEnd(edge, node, direction);
+                if (graph.isGate(next) && !hasKey) {
+                    continue;
+                }
+                reach(next, g + graph.length(edge), node, direction, to);
+            }
+        }
+        if (best == Integer.MAX_VALUE) {
+            return -1;
+        }
+
+        // turn the nodes back into cells
+        append(from);
+        if (bestEnd == NONE) {
+            walk(from, bestDirection, best);
+            return routeLength - 1;
+        }
+        int chainStart = routeLength;
+        for (int node = bestEnd; node != START; node = parent[node]) {
+            append(node);
+        }
+        reverse(chainStart, routeLength - 1);
+        int nodes = routeLength - chainStart;
+        int[] chain = Arrays.copyOfRange(route, chainStart, routeLength);
+        routeLength = chainStart;
+        for (int i = 0; i < nodes; i++) {
+            int node = chain[i];
+            if (i == 0) {
+                if (startNode == NONE) {
+                    int end = parentDirection[node];
+                    walk(from, startDirections[end], startSteps[end]);
+                }
+            } else {
+                int direction = parentDirection[node];
+                walk(graph.cellOf(chain[i - 1]), direction, graph.length(graph.edge(chain[i - 1], direction)));
+            }
+        }
+        if (goalNode == NONE) {
+            int steps = best - cost[bestEnd];
+            walk(graph.cellOf(bestEnd), bestDirection, steps);
+        }
+        return routeLength - 1;
+    }
+
+    /**
+     * gets the number of cells of the route last planned.
+     *
+     * @return the length of the route including its first cell, 0 if there is none
+     */
+    int getRouteLength() {
+        return routeLength;
+    }
+
+    /**
+     * gets a cell of the route last planned.
+     *
+     * @param index the index of the cell in the route, 0 is the cell it starts at
+     * @return the index of the cell, row * cols + col
+     */
+    int getRouteCell(int index) {
+        return route[index];
+    }
+
+    /**
+     * walks both ways along the corridor of a cell until a node is reached, or the target cell.
+     *
+     * @return the number of ways walked, with the node reached (NONE for the target cell), the number of steps
+     *         and the direction of the first step stored for each
+     */
+    private int findEnds(int cell, int target, int[] ends, int[] steps, int[] directions) {
+        int found = 0;
+        int row = cell / cols;
+        int col = cell % cols;
+        for (int direction = 0; direction < 4 && found < 2; direction++) {
+            if (!graph.isOpen(row + NavigationGraph.ROW_OFFSETS[direction], col + NavigationGraph.COL_OFFSETS[direction])) {
+                continue;
+            }
+            int current = cell + NavigationGraph.ROW_OFFSETS[direction] * cols + NavigationGraph.COL_OFFSETS[direction];
+            int heading = direction;
+            int count = 1;
+            while (graph.nodeAt(current) == NONE && current != target && current != cell) {
+                heading = graph.continueFrom(current, heading);
+                current += NavigationGraph.ROW_OFFSETS[heading] * cols + NavigationGraph.COL_OFFSETS[heading];
+                count++;
+            }
+            ends[found] = current == target && target != cell ? NONE : graph.nodeAt(current);
+            steps[found] = count;
+            // for the ends of the destination's corridor, the direction in which the end was entered
+            directions[found] = target == cell ? heading : direction;
+            found++;
+        }
+        return found;
+    }
+
+    /**
+     * records a cheaper way to a node and queues the node.
+     */
+    private void reach(int node, int g, int from, int direction, int to) {
+        if (stamp[node] == search && cost[node] <= g) {
+            return;
+        }
+        stamp[node] = search;
+        cost[node] = g;
+        parent[node] = from;
+        parentDirection[node] = direction;
+        push(((long) (g + estimate(node, to)) << 32) | node);
+    }
+
+    private int estimate(int node, int to) {
+        int cell = graph.cellOf(node);
+        return Math.abs(cell / cols - to / cols) + Math.abs(cell % cols - to % cols);
+    }
+
+    private boolean enterable(int cell, boolean hasKey) {
+        int row = cell / cols;
+        int col = cell % cols;
+        if (!graph.isOpen(row, col)) {
+            return false;
+        }
+        int node = graph.nodeAt(cell);
+        return hasKey || node == NONE || !graph.isGate(node);
+    }
+
+    /**
+     * appends the cells of a walk along a corridor to the route, starting with a step in the given direction.
+     */
+    private void walk(int cell, int direction, int steps) {
+        for (int i = 0; i < steps; i++) {
+            if (i > 0) {
+                direction = graph.continueFrom(cell, direction);
+            }
+            cell += NavigationGraph.ROW_OFFSETS[direction] * cols + NavigationGraph.COL_OFFSETS[direction];
+            append(cell);
+        }
+    }
+
+    private void append(int cell) {
+        if (routeLength == route.length) {
+            route = Arrays.copyOf(route, routeLength * 2);
+        }
+        route[routeLength++] = cell;
+    }
+
+    private void reverse(int from, int to) {
+        for (; from < to; from++, to--) {
+            int swap = route[from];
+            route[from] = route[to];
+            route[to] = swap;
+        }
+    }
+
+    private Direction direction(int from, int to) {
+        int delta = to - from;
+        if (delta == -cols) {
+            return Direction.UP;
+        }
+        if (delta == cols) {
+            return Direction.DOWN;
+        }
+        return delta < 0 ? Direction.LEFT : Direction.RIGHT;
+    }
+
+    // binary min-heap of the queued nodes
+
+    private void push(long entry) {
+        if (heapSize == heap.length) {
+            heap = Arrays.copyOf(heap, heapSize * 2);
+        }
+        int i = heapSize++;
+        while (i > 0 && heap[(i - 1) / 2] > entry) {
+            heap[i] = heap[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        heap[i] = entry;
+    }
+
+    private long pop() {
+        long top = heap[0];
+        long last = heap[--heapSize];
+        int i = 0;
+        while (2 * i + 1 < heapSize) {
+            int child = 2 * i + 1;
+            if (child + 1 < heapSize && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (heap[child] >= last) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = last;
+        return top;
+    }
+}
@@ -0,0 +1,94 @@
+package xdeolit00;
+
+import java.util.Arrays;
+
+/**
+ * this class keeps track of which ghost stands on which cell of the board.
+ * it is maintained alongside the board so that ghosts can check if a cell is taken
+ * and the engine can find the ghost on Pacman's cell without going through the list of all ghosts.
+ */
+class OccupancyGrid {
+    static final int EMPTY = -1;
+
+    private final int rows, cols;
+    private final int[] cells; // index of the ghost on each cell plus one, 0 for a free cell
+
+    /**
+     * constructs an empty grid.
+     *
+     * @param rows the number of rows of the board
+     * @param cols the number of columns of the board
+     */
+    OccupancyGrid(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        this.cells = new int[rows * cols];
+    }
+
+    /**
+     * gets the ghost standing on a cell.
+     *
+     * @param row the row of the cell
+     * @param col the column of the cell
+     * @return the index of the ghost, or EMPTY if the cell is free or outside the board
+     */
+    public int occupant(int row, int col) {
+        if (row < 0 || row >= rows || col < 0 || col >= cols) {
+            return EMPTY;
+        }
+        return cells[row * cols + col] - 1;
+    }
+
+    /**
+     * checks if no ghost stands on a cell.
+     *
+     * @param row the row of the cell
+     * @param col the column of the cell
+     * @return true if the cell is free
+     */
+    public boolean isFree(int row, int col) {
+        return occupant(row, col) == EMPTY;
+    }
+
+    /**
+     * puts a ghost on a cell.
+     *
+     * @param ghost the index of the ghost
+     * @param row the row of the cell
+     * @param col the column of the cell
+     */
+    void place(int ghost, int row, int col) {
+        cells[row * cols + col] = ghost + 1;
+    }
+
+    /**
+     * marks a cell as free.
+     *
+     * @param row the row of the cell
+     * @param col the column of the cell
+     */
+    void remove(int row, int col) {
+        cells[row * cols + col] = 0;
+    }
+
+    /**
+     * moves a ghost from one cell to another.
+     *
+     * @param ghost the index of the ghost
+     * @param fromRow the row the ghost leaves
+     * @param fromCol the column the ghost leaves
+     * @param toRow the row the ghost enters
+     * @param toCol the column the ghost enters
+     */
+    void move(int ghost, int fromRow, int fromCol, int toRow, int toCol) {
+        cells[fromRow * cols + fromCol] = 0;
+        cells[toRow * cols + toCol] = ghost + 1;
+    }
+
+    /**
+     * removes all ghosts from the grid.
+     */
+    void clear() {
+        Arrays.fill(cells, 0);
+    }
+}
@@ -5,6 +5,8 @@
 package xdeolit00;
 
 import javax.swing.*;
+import java.nio.file.Path;
+import java.util.Arrays;
 
 /**
  * the PacmanGame class contains the main method that runs the game.
@@ -14,9 +16,48 @@ public class PacmanGame {
 
     /**
      * the main method is the entry point of the game.
-     * it initialises the game by creating and showing the main frame.
+     * without arguments it initialises the game by creating and showing the main frame.
+     * "compile <level> <output>" compiles a level to the binary level format instead,
+     * "batch ..." plays headless games with a bot, see BatchRunner, and "replay ..." replays recorded games, see Replay.
+     * "server ..." hosts games over the network, see GameServer, and "client ..." plays or watches them, see GameClient.
+     * "results ..." prints the leaderboards and statistics of the stored results, see ResultStore.
+     * "watch <level>" plays a level and applies every change saved to its file to the running game.
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+        if (args.length == 3 && args[0].equals("compile")) {
+            LevelLoader.compile(args[1], Path.of(args[2]));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("batch")) {
+            BatchRunner.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("replay")) {
+            Replay.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("server")) {
+            GameServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("client")) {
+            GameClient.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("results")) {
+            ResultStore.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length == 2 && args[0].equals("watch")) {
+            SpriteCache.preload();
+            SwingUtilities.invokeLater(() -> {
+                MainFrame frame = new MainFrame();
+                frame.watchLevels();
+                frame.loadLevel(args[1]);
+            });
+            return;
+        }
+        SpriteCache.preload(); // decode the images while the window is being set up
         SwingUtilities.invokeLater(MainFrame::new);
     }
 }
\ No newline at end of file
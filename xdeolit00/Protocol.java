@@ -0,0 +1,176 @@
+package xdeolit00;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * this class defines the binary protocol spoken between the GameServer and its GameClients.
+ * every message is a frame: its length as a variable-length integer, followed by a type byte and the body.
+ * numbers are written as variable-length integers wherever they are usually small, which keeps the
+ * per-tick snapshots down to a few bytes.
+ *
+ * the client sends JOIN once after connecting and then INPUT whenever the player turns.
+ * the server answers JOIN with a FULL snapshot, after which it sends a DELTA for every tick in which
+ * something visible changed. see SnapshotEncoder for the layout of the snapshots.
+ */
+final class Protocol {
+    // client to server: session name, level id, role
+    static final byte JOIN = 1;
+    // client to server: direction ordinal
+    static final byte INPUT = 2;
+    // server to client: the whole state of the session
+    static final byte FULL = 10;
+    // server to client: what changed since the previous snapshot
+    static final byte DELTA = 11;
+    // server to client: a message explaining why the connection is closed
+    static final byte ERROR = 12;
+
+    // roles a client can ask for when joining
+    static final byte SPECTATE = 0;
+    static final byte CONTROL = 1;
+
+    // the longest frame accepted from a client, the client messages are tiny
+    static final int MAX_CLIENT_FRAME = 1024;
+
+    private Protocol() {
+    }
+
+    /**
+     * writes a number as a variable-length integer of 7 bits per byte.
+     *
+     * @param out the buffer to write to
+     * @param value the number, treated as unsigned
+     */
+    static void putVarLong(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    /**
+     * reads a number written by putVarLong.
+     *
+     * @param in the buffer to read from
+     * @return the number
+     * @throws IOException if the number is longer than 64 bits
+     */
+    static long getVarLong(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.get() & 0xFF;
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("corrupt message: variable-length number is too long");
+    }
+
+    static int getVarInt(ByteBuffer in) throws IOException {
+        return (int) getVarLong(in);
+    }
+
+    /**
+     * writes a string as its UTF-8 length followed by the bytes.
+     *
+     * @param out the buffer to write to
+     * @param value the string
+     */
+    static void putString(ByteBuffer out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putVarLong(out, bytes.length);
+        out.put(bytes);
+    }
+
+    /**
+     * reads a string written by putString.
+     *
+     * @param in the buffer to read from
+     * @return the string
+     * @throws IOException if the length is invalid
+     */
+    static String getString(ByteBuffer in) throws IOException {
+        int length = getVarInt(in);
+        if (length < 0 || length > in.remaining()) {
+            throw new IOException("corrupt message: invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * gets the number of bytes putVarLong writes for a number.
+     *
+     * @param value the number
+     * @return the length of its encoding, from 1 to 10
+     */
+    static int varLongSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * copies a message into a frame in the output buffer.
+     *
+     * @param message the body of the message, from position 0 to its limit
+     * @param out the buffer to append the frame to, must have room for it
+     */
+    static void putFrame(ByteBuffer message, ByteBuffer out) {
+        putVarLong(out, message.limit());
+        out.put(out.position(), message, 0, message.limit());
+        out.position(out.position() + message.limit());
+    }
+
+    /**
+     * gets the number of bytes a message takes as a frame.
+     *
+     * @param message the body of the message, from position 0 to its limit
+     * @return the length of the frame
+     */
+    static int frameSize(ByteBuffer message) {
+        return varLongSize(message.limit()) + message.limit();
+    }
+
+    /**
+     * reads the header of the next complete frame.
+     * if the buffer does not hold the whole frame yet, its position is left unchanged.
+     *
+     * @param in the buffer to read from
+     * @return the length of the body, with the position at the start of the body, or -1 if the frame is incomplete
+     * @throws IOException if the length is corrupt
+     */
+    static int nextFrame(ByteBuffer in) throws IOException {
+        int start = in.position();
+        long length = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (!in.hasRemaining()) {
+                in.position(start);
+                return -1;
+            }
+            if (shift >= 35) {
+                throw new IOException("corrupt message: frame length is too long");
+            }
+            int b = in.get() & 0xFF;
+            length |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("corrupt message: frame length " + length);
+        }
+        if (in.remaining() < length) {
+            in.position(start);
+            return -1;
+        }
+        return (int) length;
+    }
+}
@@ -0,0 +1,32 @@
+package xdeolit00;
+
+import java.util.SplittableRandom;
+
+/**
+ * this controller walks Pacman around at random.
+ * it keeps its direction for a random number of ticks before picking a new one.
+ */
+class RandomController implements Controller {
+    private static final Direction[] DIRECTIONS = {Direction.UP, Direction.DOWN, Direction.LEFT, Direction.RIGHT};
+
+    private final SplittableRandom random;
+    private int ticksLeft = 0;
+
+    /**
+     * constructs a random controller.
+     *
+     * @param seed the seed of the random walk, the same seed gives the same walk
+     */
+    RandomController(long seed) {
+        this.random = new SplittableRandom(seed);
+    }
+
+    @Override
+    public Direction decide(GameState state) {
+        if (--ticksLeft > 0) {
+            return Direction.NONE;
+        }
+        ticksLeft = 30 + random.nextInt(300);
+        return DIRECTIONS[random.nextInt(DIRECTIONS.length)];
+    }
+}
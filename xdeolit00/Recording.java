@@ -0,0 +1,396 @@
+package xdeolit00;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * this class records the input of a game tick by tick, so that the game can be replayed exactly.
+ * the GameEngine is deterministic, so the level, the movement intervals and the direction passed to
+ * every tick are all that is needed to play a game again. a checksum of the GameState is stored every
+ * checksumInterval ticks and after the last tick, which lets a Replay notice when it no longer matches.
+ *
+ * the input is kept as runs of equal directions, since players only change direction every few
+ * hundred ticks. in the binary format the runs are written as a direction byte followed by the
+ * length of the run as a variable-length integer.
+ */
+class Recording {
+    private static final int MAGIC = 0x50414352; // "PACR"
+    private static final short VERSION = 1;
+    static final int DEFAULT_CHECKSUM_INTERVAL = 100;
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final int READ_CHUNK = 1024; // the first capacity of the arrays of a recording that is read
+
+    private final String levelId;
+    private final long seed;
+    private final int pacmanInterval;
+    private final int ghostInterval;
+    private final int checksumInterval;
+
+    private long ticks = 0;
+    // the input as runs of equal directions
+    private byte[] runDirections = new byte[16];
+    private long[] runLengths = new long[16];
+    private int runs = 0;
+    // changes of Pacman's interval during the game, as pairs of the tick they apply from and the interval
+    private long[] intervalTicks = new long[0];
+    private int[] intervals = new int[0];
+    private long[] checksums = new long[16];
+    private int checksumCount = 0;
+    private long finalChecksum;
+
+    /**
+     * constructs an empty recording.
+     *
+     * @param levelId the level the game is played on
+     * @param seed the seed the game was started with, e.g. of a bot, or 0 if it has none
+     * @param pacmanInterval the ticks between two moves of Pacman at the start of the game
+     * @param ghostInterval the ticks between two moves of the ghosts
+     * @param checksumInterval the ticks between two checksums of the state
+     */
+    Recording(String levelId, long seed, int pacmanInterval, int ghostInterval, int checksumInterval) {
+        this.levelId = levelId;
+        this.seed = seed;
+        this.pacmanInterval = pacmanInterval;
+        this.ghostInterval = ghostInterval;
+        this.checksumInterval = Math.max(1, checksumInterval);
+    }
+
+    /**
+     * appends the input of a tick that has just been run.
+     *
+     * @param input the direction that was passed to the tick
+     * @param state the state after the tick, used for the checksums
+     */
+    public void record(Direction input, GameState state) {
+        byte direction = (byte) input.ordinal();
+        if (runs > 0 && runDirections[runs - 1] == direction) {
+            runLengths[runs - 1]++;
+        } else {
+            if (runs == runDirections.length) {
+                runDirections = Arrays.copyOf(runDirections, runs * 2);
+                runLengths = Arrays.copyOf(runLengths, runs * 2);
+            }
+            runDirections[runs] = direction;
+            runLengths[runs++] = 1;
+        }
+        ticks++;
+        if (ticks % checksumInterval == 0) {
+            if (checksumCount == checksums.length) {
+                checksums = Arrays.copyOf(checksums, checksumCount * 2);
+            }
+            checksums[checksumCount++] = state.checksum();
+        }
+        finalChecksum = state.checksum();
+    }
+
+    /**
+     * records that Pacman's interval was changed before the next tick, e.g. with the speed slider.
+     *
+     * @param interval the new interval in ticks
+     */
+    public void recordPacmanInterval(int interval) {
+        int count = intervals.length;
+        intervalTicks = Arrays.copyOf(intervalTicks, count + 1);
+        intervals = Arrays.copyOf(intervals, count + 1);
+        intervalTicks[count] = ticks;
+        intervals[count] = interval;
+    }
+
+    public String getLevelId() {
+        return levelId;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getPacmanInterval() {
+        return pacmanInterval;
+    }
+
+    public int getGhostInterval() {
+        return ghostInterval;
+    }
+
+    public int getChecksumInterval() {
+        return checksumInterval;
+    }
+
+    /**
+     * gets the number of ticks recorded.
+     *
+     * @return the length of the game in ticks
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * gets the checksum recorded after a tick.
+     *
+     * @param tick the tick, a multiple of the checksum interval
+     * @return the checksum of the state after that tick
+     */
+    public long checksumAt(long tick) {
+        return checksums[(int) (tick / checksumInterval) - 1];
+    }
+
+    /**
+     * gets the checksum of the state after the last recorded tick.
+     *
+     * @return the final checksum
+     */
+    public long getFinalChecksum() {
+        return finalChecksum;
+    }
+
+    /**
+     * creates a cursor that reads the recorded input from the first tick.
+     *
+     * @return a new cursor
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * this class reads the recorded input tick by tick.
+     */
+    class Cursor {
+        private int run = 0;
+        private long usedOfRun = 0;
+        private int interval = 0;
+        private long tick = 0;
+
+        public boolean hasNext() {
+            return tick < ticks;
+        }
+
+        /**
+         * gets the input of the next tick.
+         *
+         * @return the recorded direction
+         */
+        public Direction next() {
+            if (usedOfRun == runLengths[run]) {
+                run++;
+                usedOfRun = 0;
+            }
+            usedOfRun++;
+            tick++;
+            return DIRECTIONS[runDirections[run]];
+        }
+
+        /**
+         * gets the interval Pacman was set to before the next tick.
+         *
+         * @return the new interval in ticks, or 0 if it was not changed
+         */
+        public int nextPacmanInterval() {
+            int changed = 0;
+            while (interval < intervals.length && intervalTicks[interval] == tick) {
+                changed = intervals[interval++];
+            }
+            return changed;
+        }
+    }
+
+    /**
+     * writes the recording in the binary format.
+     *
+     * @param out the stream to write to, it is not closed
+     * @throws IOException if writing fails
+     */
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeShort(VERSION);
+        data.writeUTF(levelId);
+        data.writeLong(seed);
+        data.writeInt(pacmanInterval);
+        data.writeInt(ghostInterval);
+        data.writeInt(checksumInterval);
+        writeVarLong(data, ticks);
+
+        writeVarLong(data, runs);
+        for (int i = 0; i < runs; i++) {
+            data.writeByte(runDirections[i]);
+            writeVarLong(data, runLengths[i]);
+        }
+        writeVarLong(data, intervals.length);
+        for (int i = 0; i < intervals.length; i++) {
+            writeVarLong(data, intervalTicks[i]);
+            writeVarLong(data, intervals[i]);
+        }
+        writeVarLong(data, checksumCount);
+        for (int i = 0; i < checksumCount; i++) {
+            data.writeLong(checksums[i]);
+        }
+        data.writeLong(finalChecksum);
+        data.flush();
+    }
+
+    /**
+     * saves the recording to a file.
+     *
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void save(Path file) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            write(out);
+        }
+    }
+
+    /**
+     * reads a recording in the binary format.
+     *
+     * @param in the stream to read from, it is not closed
+     * @return the recording
+     * @throws IOException if reading fails or the data is not a valid recording
+     */
+    public static Recording read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        try {
+            if (data.readInt() != MAGIC || data.readShort() != VERSION) {
+                throw new IOException("not a recording of version " + VERSION);
+            }
+            String levelId = data.readUTF();
+            long seed = data.readLong();
+            int pacmanInterval = data.readInt();
+            int ghostInterval = data.readInt();
+            int checksumInterval = data.readInt();
+            if (pacmanInterval <= 0 || ghostInterval <= 0 || checksumInterval <= 0) {
+                throw new IOException("corrupt recording: intervals " + pacmanInterval + ", " + ghostInterval
+                        + " and " + checksumInterval + " must be positive");
+            }
+            Recording recording = new Recording(levelId, seed, pacmanInterval, ghostInterval, checksumInterval);
+            long ticks = readVarLong(data);
+            if (ticks < 0) {
+                throw new IOException("corrupt recording: " + ticks + " ticks");
+            }
+
+            // the counts below are checked against the ticks, but the arrays are still only grown as the
+            // data arrives, so a corrupt count cannot allocate more than the file holds
+            int runs = readCount(data, "runs", ticks + 1);
+            recording.runDirections = new byte[Math.max(1, Math.min(runs, READ_CHUNK))];
+            recording.runLengths = new long[recording.runDirections.length];
+            long recorded = 0;
+            for (int i = 0; i < runs; i++) {
+                if (i == recording.runDirections.length) {
+                    int length = (int) Math.min(2L * i, runs);
+                    recording.runDirections = Arrays.copyOf(recording.runDirections, length);
+                    recording.runLengths = Arrays.copyOf(recording.runLengths, length);
+                }
+                recording.runDirections[i] = data.readByte();
+                recording.runLengths[i] = readVarLong(data);
+                if (recording.runDirections[i] < 0 || recording.runDirections[i] >= DIRECTIONS.length) {
+                    throw new IOException("corrupt recording: unknown direction " + recording.runDirections[i]);
+                }
+                if (recording.runLengths[i] <= 0 || recording.runLengths[i] > ticks - recorded) {
+                    throw new IOException("corrupt recording: run of " + recording.runLengths[i] + " ticks");
+                }
+                recorded += recording.runLengths[i];
+            }
+            if (recorded != ticks) {
+                throw new IOException("corrupt recording: " + recorded + " ticks of input, expected " + ticks);
+            }
+            recording.runs = runs;
+            recording.ticks = ticks;
+
+            int changes = readCount(data, "interval changes", ticks + 1);
+            recording.intervalTicks = new long[Math.min(changes, READ_CHUNK)];
+            recording.intervals = new int[recording.intervalTicks.length];
+            for (int i = 0; i < changes; i++) {
+                if (i == recording.intervals.length) {
+                    int length = (int) Math.min(2L * i, changes);
+                    recording.intervalTicks = Arrays.copyOf(recording.intervalTicks, length);
+                    recording.intervals = Arrays.copyOf(recording.intervals, length);
+                }
+                recording.intervalTicks[i] = readVarLong(data);
+                long interval = readVarLong(data);
+                if (recording.intervalTicks[i] < (i == 0 ? 0 : recording.intervalTicks[i - 1])
+                        || recording.intervalTicks[i] > ticks || interval <= 0 || interval > Integer.MAX_VALUE) {
+                    throw new IOException("corrupt recording: interval " + interval + " from tick "
+                            + recording.intervalTicks[i]);
+                }
+                recording.intervals[i] = (int) interval;
+            }
+
+            int checksums = readCount(data, "checksums", ticks / checksumInterval);
+            if (checksums != ticks / checksumInterval) {
+                throw new IOException("corrupt recording: " + checksums + " checksums, expected "
+                        + ticks / checksumInterval);
+            }
+            recording.checksums = new long[Math.max(1, Math.min(checksums, READ_CHUNK))];
+            for (int i = 0; i < checksums; i++) {
+                if (i == recording.checksums.length) {
+                    recording.checksums = Arrays.copyOf(recording.checksums, (int) Math.min(2L * i, checksums));
+                }
+                recording.checksums[i] = data.readLong();
+            }
+            recording.checksumCount = checksums;
+            recording.finalChecksum = data.readLong();
+            return recording;
+        } catch (EOFException e) {
+            throw new IOException("recording is truncated", e);
+        }
+    }
+
+    /**
+     * loads a recording from a file.
+     *
+     * @param file the file to read
+     * @return the recording
+     * @throws IOException if the file cannot be read or is not a valid recording
+     */
+    public static Recording load(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return read(in);
+        } catch (IOException e) {
+            throw new IOException(file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * reads the number of elements that follow.
+     *
+     * @param max the most elements the recording can have
+     */
+    private static int readCount(DataInputStream in, String what, long max) throws IOException {
+        long count = readVarLong(in);
+        if (count < 0 || count > max || count > Integer.MAX_VALUE - 8) {
+            throw new IOException("corrupt recording: " + count + " " + what + ", expected at most " + max);
+        }
+        return (int) count;
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("corrupt recording: variable-length number is too long");
+    }
+}
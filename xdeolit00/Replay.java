@@ -0,0 +1,178 @@
+package xdeolit00;
+
+import javax.swing.SwingUtilities;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+/**
+ * this class plays a Recording again on a fresh game.
+ * every tick is fed the recorded direction, and the state is compared with the recorded checksums,
+ * so a replay reports the first tick at which it diverged, e.g. after the ghost AI was changed.
+ * a replay can be stepped as fast as possible headlessly, or by the GamePanel at any speed.
+ */
+class Replay {
+    private final Recording recording;
+    private final Recording.Cursor cursor;
+    private final GameState state;
+    private final GameEngine engine;
+    private long divergedAt = -1;
+
+    /**
+     * prepares a replay of a recording.
+     *
+     * @param recording the recording to replay
+     * @throws IOException if the level of the recording cannot be loaded
+     */
+    Replay(Recording recording) throws IOException {
+        this.recording = recording;
+        this.cursor = recording.cursor();
+        this.state = new GameState(LevelLoader.load(recording.getLevelId()));
+        this.engine = new GameEngine(state);
+        engine.setPacmanInterval(recording.getPacmanInterval());
+        engine.setGhostInterval(recording.getGhostInterval());
+    }
+
+    public GameState getState() {
+        return state;
+    }
+
+    public GameEngine getEngine() {
+        return engine;
+    }
+
+    public Recording getRecording() {
+        return recording;
+    }
+
+    /**
+     * checks if there are recorded ticks left.
+     *
+     * @return true if step can be called again
+     */
+    public boolean hasNext() {
+        return cursor.hasNext();
+    }
+
+    /**
+     * runs the next recorded tick and compares the state with the recording when a checksum is due.
+     *
+     * @return true if the state still matches the recording
+     */
+    public boolean step() {
+        int interval = cursor.nextPacmanInterval();
+        if (interval > 0) {
+            engine.setPacmanInterval(interval);
+        }
+        engine.tick(cursor.next());
+
+        long tick = state.getTick();
+        if (divergedAt == -1) {
+            boolean last = !cursor.hasNext();
+            if ((tick % recording.getChecksumInterval() == 0 && state.checksum() != recording.checksumAt(tick))
+                    || (last && state.checksum() != recording.getFinalChecksum())) {
+                divergedAt = tick;
+            }
+        }
+        return divergedAt == -1;
+    }
+
+    /**
+     * gets the first tick after which the state did not match the recording.
+     *
+     * @return the tick, or -1 if the replay has matched so far
+     */
+    public long getDivergedAt() {
+        return divergedAt;
+    }
+
+    /**
+     * replays a whole recording as fast as possible.
+     *
+     * @param recording the recording to replay
+     * @return the replay after its last tick
+     * @throws IOException if the level of the recording cannot be loaded
+     */
+    public static Replay run(Recording recording) throws IOException {
+        Replay replay = new Replay(recording);
+        while (replay.hasNext()) {
+            replay.step();
+        }
+        return replay;
+    }
+
+    /**
+     * replays recordings from the command line.
+     * usage: replay [--visual] [--speed FACTOR] [--threads T] file-or-directory...
+     * without --visual every recording is replayed headlessly in parallel and the ones that diverged are listed,
+     * with --visual the first recording is shown in the game window at the given speed.
+     *
+     * @param args the arguments following "replay"
+     * @throws IOException if a recording or its level cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        boolean visual = false;
+        double speed = 1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--visual": visual = true; break;
+                case "--speed": speed = Double.parseDouble(args[++i]); break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                default:
+                    Path path = Path.of(args[i]);
+                    if (Files.isDirectory(path)) {
+                        try (Stream<Path> children = Files.list(path)) {
+                            children.filter(p -> p.toString().endsWith(".pacrec")).sorted().forEach(files::add);
+                        }
+                    } else {
+                        files.add(path);
+                    }
+            }
+        }
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("no recordings given");
+        }
+
+        if (visual) {
+            Recording recording = Recording.load(files.get(0));
+            double replaySpeed = speed;
+            SwingUtilities.invokeLater(() -> new MainFrame().replay(recording, replaySpeed));
+            return;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            long start = System.nanoTime();
+            String[] failures = pool.submit(() -> files.parallelStream().map(file -> {
+                try {
+                    Replay replay = run(Recording.load(file));
+                    return replay.getDivergedAt() == -1 ? null
+                            : file + ": diverged after tick " + replay.getDivergedAt();
+                } catch (IOException e) {
+                    return file + ": " + e.getMessage();
+                } catch (RuntimeException e) {
+                    // report a recording the checks missed as one failed replay instead of ending the batch
+                    return file + ": " + e;
+                }
+            }).filter(failure -> failure != null).toArray(String[]::new)).join();
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            for (String failure : failures) {
+                System.out.println(failure);
+            }
+            System.out.printf("%d replays in %.2fs, %d matched, %d failed%n",
+                    files.size(), seconds, files.size() - failures.length, failures.length);
+            if (failures.length > 0) {
+                System.exit(1);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,530 @@
+package xdeolit00;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * this class keeps the results of finished games in a file and answers leaderboard and statistics queries on them.
+ * results are appended to a memory-mapped log and never changed afterwards. level and controller names are
+ * written to the log once, as name records, and every result refers to them by number, so a result takes
+ * a fixed RESULT_SIZE bytes.
+ *
+ * the log is read once when the store is opened, and while it is read and whenever a result is appended
+ * the statistics of the level and of the level and controller are updated, and the result is put into the
+ * top-K list of its level if it scored high enough. queries therefore only look at these indexes and never
+ * at the log, however many results it holds.
+ *
+ * several processes may append to the same file, e.g. the game and a batch run. every append holds a lock
+ * on the file and first reads the results the others appended. the header holds the end of the last complete
+ * record and is only updated after the record was written, so a record that was cut off is ignored.
+ * games on generated mazes are stored under the id of the maze without its seed, see GameResult.getLevelGroup,
+ * so the mazes of a batch share one leaderboard.
+ */
+class ResultStore implements Closeable {
+    private static final int MAGIC = 0x50414353; // "PACS"
+    private static final short VERSION = 1;
+    static final int DEFAULT_TOP = 10;
+
+    // the header: magic, version, unused, end of the log
+    private static final int END_OFFSET = 8;
+    private static final int HEADER_SIZE = 16;
+    // a name record: type, length of the name, the name in UTF-8
+    private static final byte NAME = 1;
+    // a result record: type, outcome, level, controller, score, ticks, seed
+    private static final byte RESULT = 2;
+    private static final int RESULT_SIZE = 1 + 1 + 4 + 4 + 4 + 8 + 8;
+    private static final long MIN_MAPPING = 1 << 20;
+    private static final GameResult.Outcome[] OUTCOMES = GameResult.Outcome.values();
+
+    /**
+     * the aggregated results of a level, or of a controller on a level.
+     */
+    static class Stats {
+        private long games, won, lost;
+        private long scoreSum;
+        private int minScore = Integer.MAX_VALUE, maxScore = Integer.MIN_VALUE;
+        private long winTicksSum;
+        private long minWinTicks = Long.MAX_VALUE;
+
+        private Stats copy() {
+            Stats copy = new Stats();
+            copy.games = games;
+            copy.won = won;
+            copy.lost = lost;
+            copy.scoreSum = scoreSum;
+            copy.minScore = minScore;
+            copy.maxScore = maxScore;
+            copy.winTicksSum = winTicksSum;
+            copy.minWinTicks = minWinTicks;
+            return copy;
+        }
+
+        private void add(GameResult.Outcome outcome, int score, long ticks) {
+            games++;
+            scoreSum += score;
+            minScore = Math.min(minScore, score);
+            maxScore = Math.max(maxScore, score);
+            if (outcome == GameResult.Outcome.WON) {
+                won++;
+                winTicksSum += ticks;
+                minWinTicks = Math.min(minWinTicks, ticks);
+            } else if (outcome == GameResult.Outcome.LOST) {
+                lost++;
+            }
+        }
+
+        public long getGames() {
+            return games;
+        }
+
+        public long getWon() {
+            return won;
+        }
+
+        public long getLost() {
+            return lost;
+        }
+
+        public long getTimedOut() {
+            return games - won - lost;
+        }
+
+        public int getMinScore() {
+            return games == 0 ? 0 : minScore;
+        }
+
+        public int getMaxScore() {
+            return games == 0 ? 0 : maxScore;
+        }
+
+        public double getMeanScore() {
+            return games == 0 ? 0 : (double) scoreSum / games;
+        }
+
+        /**
+         * gets the fewest ticks a game needed to reach the gate.
+         *
+         * @return the ticks, or -1 if no game was won
+         */
+        public long getFastestWin() {
+            return won == 0 ? -1 : minWinTicks;
+        }
+
+        public double getMeanWinTicks() {
+            return won == 0 ? 0 : (double) winTicksSum / won;
+        }
+    }
+
+    /**
+     * the best results of a level, best first: highest score, then fewest ticks, then the result stored first.
+     * only the positions of the results in the log are kept, they are read back when the list is queried.
+     */
+    private static class TopList {
+        private final int[] scores;
+        private final long[] ticks;
+        private final long[] positions;
+        private int size;
+
+        TopList(int capacity) {
+            scores = new int[capacity];
+            ticks = new long[capacity];
+            positions = new long[capacity];
+        }
+
+        void offer(int score, long ticks, long position) {
+            int i = size;
+            while (i > 0 && (score > scores[i - 1] || (score == scores[i - 1] && ticks < this.ticks[i - 1]))) {
+                i--;
+            }
+            if (i == scores.length) {
+                return; // not better than any of the list
+            }
+            int moved = Math.min(size, scores.length - 1) - i;
+            System.arraycopy(scores, i, scores, i + 1, moved);
+            System.arraycopy(this.ticks, i, this.ticks, i + 1, moved);
+            System.arraycopy(positions, i, positions, i + 1, moved);
+            scores[i] = score;
+            this.ticks[i] = ticks;
+            positions[i] = position;
+            size = Math.min(size + 1, scores.length);
+        }
+    }
+
+    private final FileChannel channel;
+    private final int top;
+    private MappedByteBuffer log;
+    private long end = HEADER_SIZE; // the end of the records that are indexed
+
+    // the names of the log, numbered in the order they were written
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> nameIds = new HashMap<>();
+
+    // the indexes, by the number of the level's name, and by level and controller
+    private final Map<Integer, Stats> levelStats = new HashMap<>();
+    private final Map<Long, Stats> controllerStats = new HashMap<>();
+    private final Map<Integer, TopList> topLists = new HashMap<>();
+    private long count;
+
+    /**
+     * opens a store with the default length of the leaderboards, creating the file if it does not exist.
+     *
+     * @param file the file of the log
+     * @throws IOException if the file cannot be opened or is not a valid log
+     */
+    ResultStore(Path file) throws IOException {
+        this(file, DEFAULT_TOP);
+    }
+
+    /**
+     * opens a store, creating the file if it does not exist, and indexes the results already in it.
+     *
+     * @param file the file of the log
+     * @param top the number of results kept on the leaderboard of each level, the leaderboards are rebuilt
+     *            whenever the store is opened, so this can differ between the processes using the file
+     * @throws IOException if the file cannot be opened or is not a valid log
+     */
+    ResultStore(Path file, int top) throws IOException {
+        this.top = Math.max(1, top);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            FileLock lock = channel.lock();
+            try {
+                map(Math.max(channel.size(), HEADER_SIZE));
+                if (log.getInt(0) == 0 && log.getLong(END_OFFSET) == 0) { // a new file
+                    log.putInt(0, MAGIC);
+                    log.putShort(4, VERSION);
+                    log.putLong(END_OFFSET, HEADER_SIZE);
+                } else if (log.getInt(0) != MAGIC || log.getShort(4) != VERSION) {
+                    throw new IOException("not a results store of version " + VERSION + ": " + file);
+                }
+                refresh();
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * appends the result of a game to the log and the indexes.
+     *
+     * @param result the result
+     * @throws IOException if writing fails
+     */
+    public void append(GameResult result) throws IOException {
+        append(List.of(result));
+    }
+
+    /**
+     * appends the results of many games at once, taking the lock on the file only once.
+     *
+     * @param results the results
+     * @throws IOException if writing fails
+     */
+    public synchronized void append(List<GameResult> results) throws IOException {
+        FileLock lock = channel.lock();
+        try {
+            refresh(); // the results appended by other processes come first
+            // the records are written after the indexed ones and only indexed once the header was updated,
+            // so if writing fails half way the store is left as it was
+            Map<String, Integer> added = new HashMap<>();
+            long position = end;
+            for (GameResult result : results) {
+                position = putName(position, result.getLevelGroup(), added);
+                position = putName(position, result.getController(), added);
+                ensureCapacity(position + RESULT_SIZE);
+                log.put((int) position, RESULT);
+                log.put((int) position + 1, (byte) result.getOutcome().ordinal());
+                log.putInt((int) position + 2, nameId(result.getLevelGroup(), added));
+                log.putInt((int) position + 6, nameId(result.getController(), added));
+                log.putInt((int) position + 10, result.getScore());
+                log.putLong((int) position + 14, result.getTicks());
+                log.putLong((int) position + 22, result.getSeed());
+                position += RESULT_SIZE;
+            }
+            log.putLong(END_OFFSET, position); // the records are complete
+            refresh();
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * gets the number of results in the store.
+     *
+     * @return the number of results read or appended since the store was opened
+     */
+    public synchronized long size() {
+        return count;
+    }
+
+    /**
+     * gets the levels that have results, in the order of their first result.
+     *
+     * @return the level ids, generated mazes without their seed
+     */
+    public synchronized List<String> levels() {
+        List<String> levels = new ArrayList<>();
+        for (int id = 0; id < names.size(); id++) {
+            if (levelStats.containsKey(id)) {
+                levels.add(names.get(id));
+            }
+        }
+        return levels;
+    }
+
+    /**
+     * gets the statistics of a level.
+     *
+     * @param levelId the level, a generated maze with or without its seed
+     * @return a copy of the statistics, with no games if the level has no results
+     */
+    public synchronized Stats stats(String levelId) {
+        Integer level = nameIds.get(GameResult.levelGroup(levelId));
+        Stats stats = level == null ? null : levelStats.get(level);
+        return stats == null ? new Stats() : stats.copy();
+    }
+
+    /**
+     * gets the statistics of the games a controller played on a level.
+     *
+     * @param levelId the level, a generated maze with or without its seed
+     * @param controller the name of the controller, e.g. "greedy" or "human"
+     * @return a copy of the statistics, with no games if the controller has no results on the level
+     */
+    public synchronized Stats stats(String levelId, String controller) {
+        Integer level = nameIds.get(GameResult.levelGroup(levelId));
+        Integer id = nameIds.get(controller);
+        Stats stats = level == null || id == null ? null : controllerStats.get(key(level, id));
+        return stats == null ? new Stats() : stats.copy();
+    }
+
+    /**
+     * gets the best results of a level.
+     *
+     * @param levelId the level, a generated maze with or without its seed
+     * @param k the number of results, at most the length of the leaderboards the store was opened with
+     * @return the best results, best first
+     */
+    public synchronized List<GameResult> top(String levelId, int k) {
+        Integer level = nameIds.get(GameResult.levelGroup(levelId));
+        TopList list = level == null ? null : topLists.get(level);
+        if (list == null) {
+            return List.of();
+        }
+        List<GameResult> results = new ArrayList<>();
+        for (int i = 0; i < Math.min(k, list.size); i++) {
+            results.add(read(list.positions[i]));
+        }
+        return results;
+    }
+
+    /**
+     * gets the highest score reached on a level.
+     *
+     * @param levelId the level, a generated maze with or without its seed
+     * @return the score, or -1 if the level has no results
+     */
+    public synchronized int best(String levelId) {
+        Stats stats = stats(levelId);
+        return stats.getGames() == 0 ? -1 : stats.getMaxScore();
+    }
+
+    /**
+     * writes the log to the disk and closes the file.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel.isOpen()) {
+            log.force();
+            channel.close();
+        }
+    }
+
+    /**
+     * indexes the records between the end of the indexed ones and the end stored in the header,
+     * i.e. all records when the store is opened, and afterwards those of other processes and of append.
+     * must be called while holding the lock on the file.
+     */
+    private void refresh() throws IOException {
+        long stored = log.getLong(END_OFFSET);
+        if (stored > channel.size()) {
+            throw new IOException("corrupt results store: ends at " + stored + " in a file of " + channel.size());
+        }
+        ensureCapacity(stored);
+        long position = end;
+        while (position < stored) {
+            byte type = log.get((int) position);
+            if (type == NAME) {
+                int length = log.getShort((int) position + 1) & 0xFFFF;
+                byte[] bytes = new byte[length];
+                log.get((int) position + 3, bytes);
+                addName(new String(bytes, StandardCharsets.UTF_8));
+                position += 3 + length;
+            } else if (type == RESULT) {
+                int outcome = log.get((int) position + 1);
+                int level = log.getInt((int) position + 2);
+                int controller = log.getInt((int) position + 6);
+                if (outcome < 0 || outcome >= OUTCOMES.length || level >= names.size() || controller >= names.size()) {
+                    throw new IOException("corrupt results store: bad result at " + position);
+                }
+                index(position, level, controller, OUTCOMES[outcome], log.getInt((int) position + 10),
+                        log.getLong((int) position + 14));
+                position += RESULT_SIZE;
+            } else {
+                throw new IOException("corrupt results store: unknown record " + type + " at " + position);
+            }
+        }
+        end = position;
+    }
+
+    /**
+     * writes a name record at a position of the log if the name has no number yet.
+     *
+     * @param added the names written by the current append, with the numbers they get once they are indexed
+     * @return the position after the record, or the given one if nothing was written
+     */
+    private long putName(long position, String name, Map<String, Integer> added) throws IOException {
+        if (nameIds.containsKey(name) || added.containsKey(name)) {
+            return position;
+        }
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IOException("name too long for the results store: " + name);
+        }
+        ensureCapacity(position + 3 + bytes.length);
+        log.put((int) position, NAME);
+        log.putShort((int) position + 1, (short) bytes.length);
+        log.put((int) position + 3, bytes);
+        added.put(name, names.size() + added.size());
+        return position + 3 + bytes.length;
+    }
+
+    /**
+     * gets the number of a name that is indexed or was written by the current append.
+     */
+    private int nameId(String name, Map<String, Integer> added) {
+        Integer id = nameIds.get(name);
+        return id != null ? id : added.get(name);
+    }
+
+    private int addName(String name) {
+        int id = names.size();
+        names.add(name);
+        nameIds.put(name, id);
+        return id;
+    }
+
+    private void index(long position, int level, int controller, GameResult.Outcome outcome, int score, long ticks) {
+        levelStats.computeIfAbsent(level, key -> new Stats()).add(outcome, score, ticks);
+        controllerStats.computeIfAbsent(key(level, controller), key -> new Stats()).add(outcome, score, ticks);
+        topLists.computeIfAbsent(level, key -> new TopList(top)).offer(score, ticks, position);
+        count++;
+    }
+
+    private static long key(int level, int controller) {
+        return (long) level << 32 | controller;
+    }
+
+    /**
+     * reads a result back from the log.
+     */
+    private GameResult read(long position) {
+        int p = (int) position;
+        return new GameResult(names.get(log.getInt(p + 2)), log.getLong(p + 22), names.get(log.getInt(p + 6)),
+                OUTCOMES[log.get(p + 1)], log.getInt(p + 10), log.getLong(p + 14));
+    }
+
+    /**
+     * makes sure the mapping reaches up to a position, mapping a larger part of the file if necessary.
+     * the mapping at least doubles each time, so appending many results only maps the file a few times.
+     */
+    private void ensureCapacity(long required) throws IOException {
+        if (log == null || required > log.capacity()) {
+            map(Math.max(required, Math.max(MIN_MAPPING, log == null ? 0 : 2L * log.capacity())));
+        }
+    }
+
+    private void map(long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("results store is full");
+        }
+        log = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    /**
+     * prints the leaderboards and statistics from the command line.
+     * usage: results [--file FILE] [--top K] [--controller NAME] [level...]
+     * without levels every level is summarised in a line, otherwise the statistics and the best results
+     * of each given level are printed.
+     *
+     * @param args the arguments following "results"
+     * @throws IOException if the store cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        Path file = Path.of(System.getProperty("pacman.results", "results.pacres"));
+        int k = DEFAULT_TOP;
+        String controller = null;
+        List<String> levels = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--file": file = Path.of(args[++i]); break;
+                case "--top": k = Integer.parseInt(args[++i]); break;
+                case "--controller": controller = args[++i]; break;
+                default: levels.add(args[i]);
+            }
+        }
+        if (!Files.isRegularFile(file)) {
+            System.out.println("no results in " + file);
+            return;
+        }
+
+        long start = System.nanoTime();
+        try (ResultStore store = new ResultStore(file, Math.max(k, DEFAULT_TOP))) {
+            System.out.printf("%d results in %s, indexed in %.1fms%n", store.size(), file,
+                    (System.nanoTime() - start) / 1e6);
+            if (levels.isEmpty()) {
+                for (String level : store.levels()) {
+                    Stats stats = controller == null ? store.stats(level) : store.stats(level, controller);
+                    if (stats.getGames() > 0) {
+                        System.out.printf("%-30s games %d, won %.1f%%, best %d, mean %.1f%n", level, stats.getGames(),
+                                100.0 * stats.getWon() / stats.getGames(), stats.getMaxScore(), stats.getMeanScore());
+                    }
+                }
+                return;
+            }
+            for (String level : levels) {
+                Stats stats = controller == null ? store.stats(level) : store.stats(level, controller);
+                String name = GameResult.levelGroup(level);
+                System.out.println(name + (controller == null ? "" : " (" + controller + ")") + ":");
+                System.out.printf("  games %d, won %d, lost %d, timed out %d%n", stats.getGames(), stats.getWon(),
+                        stats.getLost(), stats.getTimedOut());
+                System.out.printf("  score       min %d, max %d, mean %.1f%n", stats.getMinScore(),
+                        stats.getMaxScore(), stats.getMeanScore());
+                if (stats.getWon() > 0) {
+                    System.out.printf("  ticks to gate min %d, mean %.1f%n", stats.getFastestWin(),
+                            stats.getMeanWinTicks());
+                }
+                List<GameResult> best = store.top(level, k);
+                for (int i = 0; i < best.size(); i++) {
+                    GameResult result = best.get(i);
+                    System.out.printf("  %2d. %6d  %-7s %8d ticks  %s seed %d%n", i + 1, result.getScore(),
+                            result.getOutcome(), result.getTicks(), result.getController(), result.getSeed());
+                }
+            }
+        }
+    }
+}
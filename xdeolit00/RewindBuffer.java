@@ -0,0 +1,74 @@
+package xdeolit00;
+
+import java.util.Arrays;
+
+/**
+ * this class keeps a snapshot of the last ticks of a game in a ring buffer of fixed size, so the game can be rewound.
+ * consecutive snapshots share their unchanged data, see GameSnapshot, so recording every tick stays cheap:
+ * a tick in which nothing moved costs a single small object, and a move only costs the page of the board
+ * that changed and, if ghosts moved, their positions.
+ */
+class RewindBuffer {
+    private final GameSnapshot[] snapshots;
+    private int newest = -1; // the slot of the newest snapshot
+    private int size = 0;
+
+    /**
+     * constructs an empty buffer.
+     *
+     * @param capacity the number of snapshots kept, older ones are overwritten
+     */
+    RewindBuffer(int capacity) {
+        snapshots = new GameSnapshot[Math.max(1, capacity)];
+    }
+
+    /**
+     * takes a snapshot of the game, overwriting the oldest one if the buffer is full.
+     *
+     * @param state the game, usually right after a tick
+     */
+    public void record(GameState state) {
+        GameSnapshot previous = size > 0 ? snapshots[newest] : null;
+        newest = (newest + 1) % snapshots.length;
+        snapshots[newest] = GameSnapshot.of(state, previous);
+        size = Math.min(size + 1, snapshots.length);
+    }
+
+    /**
+     * goes back a number of snapshots and forgets the ones that are newer.
+     * the snapshot that is gone back to stays in the buffer, so it can be rewound further from there.
+     *
+     * @param count how many snapshots to go back, at most to the oldest one
+     * @return the snapshot gone back to, or null if the buffer is empty
+     */
+    public GameSnapshot rewind(int count) {
+        if (size == 0) {
+            return null;
+        }
+        count = Math.max(0, Math.min(count, size - 1));
+        for (int i = 0; i < count; i++) {
+            snapshots[newest] = null;
+            newest = (newest - 1 + snapshots.length) % snapshots.length;
+        }
+        size -= count;
+        return snapshots[newest];
+    }
+
+    /**
+     * gets the number of snapshots in the buffer.
+     *
+     * @return the number of ticks that can be gone back to
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * forgets all snapshots, e.g. when a new game starts.
+     */
+    public void clear() {
+        Arrays.fill(snapshots, null);
+        newest = -1;
+        size = 0;
+    }
+}
@@ -0,0 +1,260 @@
+package xdeolit00;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * this class encodes the state of a game running on the GameServer into snapshots for its clients.
+ * a FULL snapshot is sent when a client joins. it names the level, which the client loads itself, and
+ * lists only the cells that differ from the level as it was loaded, followed by Pacman, the score and
+ * the positions of all ghosts. its tick is the tick of the last DELTA, which the next DELTA counts from.
+ * after every tick a DELTA lists what changed since the previous tick: the cells Pacman changed, the ghosts
+ * that moved and Pacman's position, direction, score, key and status where they changed. a ghost only ever
+ * moves by one cell, so a move is encoded as the distance to the previous moving ghost in the list and the
+ * direction, usually a single byte. every CHECKSUM_INTERVAL ticks the checksum of the state is added, which
+ * lets the clients verify that their copy of the game still matches.
+ *
+ * the encoder writes into a single buffer that it reuses for every snapshot, so encoding does not allocate
+ * once the buffer has grown to the size of the largest snapshot.
+ */
+class SnapshotEncoder {
+    // the parts present in a DELTA
+    static final int PACMAN = 1;
+    static final int DIRECTION = 2;
+    static final int SCORE = 4;
+    static final int KEY = 8;
+    static final int STATUS = 16;
+    static final int CHECKSUM = 32;
+    static final int CELLS = 64;
+    static final int GHOSTS = 128;
+
+    // a cell is encoded as its tile, with the top bit set if it holds a pellet
+    static final int PELLET_BIT = 0x80;
+
+    static final int CHECKSUM_INTERVAL = Recording.DEFAULT_CHECKSUM_INTERVAL;
+
+    private final Level level;
+    private final GameState state;
+    private final GameEngine engine;
+    private ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+    // the state as of the last snapshot
+    private long lastTick;
+    private long lastStep;
+    private int lastRow, lastCol, lastScore;
+    private Direction lastDirection;
+    private boolean lastKey;
+    private GameState.Status lastStatus;
+
+    /**
+     * constructs an encoder for a game. the board of the game starts tracking its changes.
+     *
+     * @param level the level the game was started on
+     * @param engine the engine running the game
+     */
+    SnapshotEncoder(Level level, GameEngine engine) {
+        this.level = level;
+        this.engine = engine;
+        this.state = engine.getState();
+        state.getBoard().trackChanges();
+        state.getBoard().clearChanges();
+        remember();
+    }
+
+    /**
+     * encodes the whole state of the game.
+     *
+     * @param control true if the client receiving the snapshot controls Pacman
+     * @return the message, from position 0 to its limit, valid until the next snapshot is encoded
+     */
+    public ByteBuffer full(boolean control) {
+        buffer.clear();
+        ensure(32);
+        buffer.put(Protocol.FULL);
+        ensure(level.getId().length() * 3 + 8);
+        Protocol.putString(buffer, level.getId());
+        buffer.put(control ? Protocol.CONTROL : Protocol.SPECTATE);
+        // the ticks since the last snapshot changed nothing but the tick, and the next delta counts from there
+        Protocol.putVarLong(buffer, lastTick);
+        Protocol.putVarLong(buffer, state.getPlayerRow());
+        Protocol.putVarLong(buffer, state.getPlayerCol());
+        buffer.put((byte) state.getDirection().ordinal());
+        buffer.put((byte) (state.hasKey() ? 1 : 0));
+        Protocol.putVarLong(buffer, state.getScore());
+        buffer.put((byte) state.getStatus().ordinal());
+
+        // only the cells that changed since the level was loaded
+        Board board = state.getBoard();
+        Board initial = level.getBoard();
+        int cols = board.getCols();
+        int changed = 0;
+        for (int row = 0; row < board.getRows(); row++) {
+            for (int col = 0; col < cols; col++) {
+                if (differs(board, initial, row, col)) {
+                    changed++;
+                }
+            }
+        }
+        ensure(5);
+        Protocol.putVarLong(buffer, changed);
+        for (int row = 0; row < board.getRows(); row++) {
+            for (int col = 0; col < cols; col++) {
+                if (differs(board, initial, row, col)) {
+                    ensure(6);
+                    Protocol.putVarLong(buffer, row * cols + col);
+                    buffer.put(cell(board, row, col));
+                }
+            }
+        }
+
+        List<Ghost> ghosts = state.ghosts();
+        ensure(5 + ghosts.size() * 10);
+        Protocol.putVarLong(buffer, ghosts.size());
+        for (int i = 0; i < ghosts.size(); i++) {
+            Ghost ghost = ghosts.get(i);
+            Protocol.putVarLong(buffer, ghost.getRow());
+            Protocol.putVarLong(buffer, ghost.getCol());
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * encodes what changed since the previous snapshot. must be called after every tick of the game.
+     *
+     * @return the message, from position 0 to its limit, valid until the next snapshot is encoded,
+     *         or null if nothing changed that the clients could see
+     */
+    public ByteBuffer delta() {
+        Board board = state.getBoard();
+        List<Ghost> ghosts = state.ghosts();
+        long step = engine.getStep();
+        boolean stepped = step != lastStep;
+
+        int flags = 0;
+        if (state.getPlayerRow() != lastRow || state.getPlayerCol() != lastCol) {
+            flags |= PACMAN;
+        }
+        if (state.getDirection() != lastDirection) {
+            flags |= DIRECTION;
+        }
+        if (state.getScore() != lastScore) {
+            flags |= SCORE;
+        }
+        if (state.hasKey() != lastKey) {
+            flags |= KEY;
+        }
+        if (state.getStatus() != lastStatus) {
+            flags |= STATUS;
+        }
+        if (state.getTick() % CHECKSUM_INTERVAL == 0 || (flags & STATUS) != 0) {
+            flags |= CHECKSUM;
+        }
+        if (board.getChangeCount() > 0) {
+            flags |= CELLS;
+        }
+        int moved = 0;
+        if (stepped) {
+            for (int i = 0; i < ghosts.size(); i++) {
+                if (ghosts.get(i).hasMovedIn(step)) {
+                    moved++;
+                }
+            }
+            if (moved > 0) {
+                flags |= GHOSTS;
+            }
+        }
+        if (flags == 0) {
+            lastStep = step;
+            return null;
+        }
+
+        buffer.clear();
+        ensure(48 + board.getChangeCount() * 6 + moved * 5);
+        buffer.put(Protocol.DELTA);
+        Protocol.putVarLong(buffer, state.getTick() - lastTick);
+        buffer.put((byte) flags);
+        if ((flags & PACMAN) != 0) {
+            Protocol.putVarLong(buffer, state.getPlayerRow());
+            Protocol.putVarLong(buffer, state.getPlayerCol());
+        }
+        if ((flags & DIRECTION) != 0) {
+            buffer.put((byte) state.getDirection().ordinal());
+        }
+        if ((flags & SCORE) != 0) {
+            Protocol.putVarLong(buffer, state.getScore());
+        }
+        if ((flags & STATUS) != 0) {
+            buffer.put((byte) state.getStatus().ordinal());
+        }
+        if ((flags & CHECKSUM) != 0) {
+            buffer.putLong(state.checksum());
+        }
+        if ((flags & CELLS) != 0) {
+            int cols = board.getCols();
+            Protocol.putVarLong(buffer, board.getChangeCount());
+            for (int i = 0; i < board.getChangeCount(); i++) {
+                int cell = board.getChangedCell(i);
+                Protocol.putVarLong(buffer, cell);
+                buffer.put(cell(board, cell / cols, cell % cols));
+            }
+        }
+        if ((flags & GHOSTS) != 0) {
+            Protocol.putVarLong(buffer, moved);
+            int previous = -1;
+            for (int i = 0; i < ghosts.size(); i++) {
+                Ghost ghost = ghosts.get(i);
+                if (ghost.hasMovedIn(step)) {
+                    Protocol.putVarLong(buffer, ((long) (i - previous - 1) << 2) | direction(ghost));
+                    previous = i;
+                }
+            }
+        }
+        remember();
+        return buffer.flip();
+    }
+
+    /**
+     * remembers the current state as the one the clients have and forgets the changed cells.
+     */
+    private void remember() {
+        lastTick = state.getTick();
+        lastStep = engine.getStep();
+        lastRow = state.getPlayerRow();
+        lastCol = state.getPlayerCol();
+        lastScore = state.getScore();
+        lastDirection = state.getDirection();
+        lastKey = state.hasKey();
+        lastStatus = state.getStatus();
+        state.getBoard().clearChanges();
+    }
+
+    /**
+     * makes sure the buffer has room for more bytes, growing it and keeping what was written so far.
+     */
+    private void ensure(int bytes) {
+        if (buffer.remaining() < bytes) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+            grown.put(buffer.flip());
+            buffer = grown;
+        }
+    }
+
+    private static boolean differs(Board board, Board initial, int row, int col) {
+        return board.tile(row, col) != initial.tile(row, col) || board.hasPellet(row, col) != initial.hasPellet(row, col);
+    }
+
+    static byte cell(Board board, int row, int col) {
+        return (byte) (board.tile(row, col) | (board.hasPellet(row, col) ? PELLET_BIT : 0));
+    }
+
+    /**
+     * gets the direction of a ghost's last move in the order Ghost uses: up, down, left, right.
+     */
+    private static int direction(Ghost ghost) {
+        int deltaRow = ghost.getRow() - ghost.getPreviousRow();
+        if (deltaRow != 0) {
+            return deltaRow < 0 ? 0 : 1;
+        }
+        return ghost.getCol() < ghost.getPreviousCol() ? 2 : 3;
+    }
+}
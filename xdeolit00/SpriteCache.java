@@ -0,0 +1,280 @@
+package xdeolit00;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * this class holds the images of the game pre-scaled to the current cell size and packed into a single atlas.
+ * the source images are large (the wall and gate are over 1000 pixels wide), so scaling them
+ * while drawing every cell of every frame is expensive. instead each image is scaled once whenever the
+ * cell size changes and copied into the atlas, and every sprite is drawn as a part of the atlas afterwards,
+ * so all drawing copies from the same image. animated GIFs keep all of their frames.
+ *
+ * the images are decoded in parallel in the background by preload, which the game starts before it opens
+ * its window, so decoding overlaps with setting up the window instead of delaying it.
+ */
+class SpriteCache {
+    /**
+     * the images used by the game, with their file and their size relative to a cell.
+     */
+    enum Sprite {
+        WALL("wall.png", 1.0),
+        GATE("gate.png", 1.0),
+        PACMAN("pacman.png", 0.5),
+        PACMAN_UP("up.gif", 0.5),
+        PACMAN_DOWN("down.gif", 0.5),
+        PACMAN_LEFT("left.gif", 0.5),
+        PACMAN_RIGHT("right.gif", 0.5),
+        DEAD("dead.png", 0.5),
+        KEY("key.png", 0.5),
+        GHOST("ghost.gif", 0.5);
+
+        private final String file;
+        private final double scale;
+
+        Sprite(String file, double scale) {
+            this.file = file;
+            this.scale = scale;
+        }
+
+        /**
+         * gets the size of the sprite on screen.
+         *
+         * @param fieldSize the size of a cell
+         * @return the width and height of the sprite in pixels
+         */
+        public int size(int fieldSize) {
+            return (int) (fieldSize * scale);
+        }
+
+        /**
+         * gets the animated sprite of Pacman moving in a direction.
+         *
+         * @param direction the direction Pacman moves in
+         * @return the sprite, PACMAN if he stands still
+         */
+        static Sprite pacman(Direction direction) {
+            switch (direction) {
+                case UP: return PACMAN_UP;
+                case DOWN: return PACMAN_DOWN;
+                case LEFT: return PACMAN_LEFT;
+                case RIGHT: return PACMAN_RIGHT;
+                default: return PACMAN;
+            }
+        }
+    }
+
+    // sources are reduced to about this size when they are decoded, no cell is drawn larger
+    private static final int MAX_SOURCE_SIZE = 256;
+    // the atlas is packed into rows of at most this many cells
+    private static final int ATLAS_CELLS = 4;
+
+    private static CompletableFuture<SpriteCache> preloaded;
+
+    private final BufferedImage[][] sources = new BufferedImage[Sprite.values().length][];
+    private final int[] frameDelays = new int[Sprite.values().length];
+    private BufferedImage atlas;
+    private final int[][] atlasX = new int[Sprite.values().length][];
+    private final int[][] atlasY = new int[Sprite.values().length][];
+    private int fieldSize = -1;
+
+    /**
+     * starts decoding all sprites from the "images" folder on the classpath, each on its own thread of the
+     * common pool. later calls return the same future.
+     *
+     * @return the cache, completed once every sprite has been decoded
+     */
+    static synchronized CompletableFuture<SpriteCache> preload() {
+        if (preloaded == null) {
+            Sprite[] sprites = Sprite.values();
+            CompletableFuture<?>[] decoded = new CompletableFuture<?>[sprites.length];
+            SpriteCache cache = new SpriteCache();
+            for (Sprite sprite : sprites) {
+                decoded[sprite.ordinal()] = CompletableFuture.runAsync(() -> cache.load(sprite));
+            }
+            // joining the futures publishes the decoded images to the thread that uses the cache
+            preloaded = CompletableFuture.allOf(decoded).thenApply(done -> cache);
+        }
+        return preloaded;
+    }
+
+    private SpriteCache() {
+    }
+
+    /**
+     * scales all sprites to a new cell size and packs them into the atlas, unless they already have that size.
+     *
+     * @param fieldSize the size of a cell in pixels
+     * @param configuration the graphics configuration to create the atlas for, or null for a plain image
+     * @return true if the sprites were scaled again
+     */
+    public boolean resize(int fieldSize, GraphicsConfiguration configuration) {
+        if (fieldSize == this.fieldSize) {
+            return false;
+        }
+        this.fieldSize = fieldSize;
+
+        // lay the frames out in rows, a row is as high as its largest sprite
+        int maxWidth = Math.max(1, ATLAS_CELLS * fieldSize);
+        int x = 0, y = 0, rowHeight = 0, width = 1;
+        for (Sprite sprite : Sprite.values()) {
+            int size = Math.max(1, sprite.size(fieldSize));
+            int frames = sources[sprite.ordinal()].length;
+            atlasX[sprite.ordinal()] = new int[frames];
+            atlasY[sprite.ordinal()] = new int[frames];
+            for (int i = 0; i < frames; i++) {
+                if (x > 0 && x + size > maxWidth) {
+                    x = 0;
+                    y += rowHeight;
+                    rowHeight = 0;
+                }
+                atlasX[sprite.ordinal()][i] = x;
+                atlasY[sprite.ordinal()][i] = y;
+                x += size;
+                width = Math.max(width, x);
+                rowHeight = Math.max(rowHeight, size);
+            }
+        }
+        int height = Math.max(1, y + rowHeight);
+
+        atlas = configuration != null
+                ? configuration.createCompatibleImage(width, height, Transparency.TRANSLUCENT)
+                : new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = atlas.createGraphics();
+        for (Sprite sprite : Sprite.values()) {
+            BufferedImage[] frames = sources[sprite.ordinal()];
+            int size = Math.max(1, sprite.size(fieldSize));
+            for (int i = 0; i < frames.length; i++) {
+                g.drawImage(scale(frames[i], size), atlasX[sprite.ordinal()][i], atlasY[sprite.ordinal()][i], null);
+            }
+        }
+        g.dispose();
+        return true;
+    }
+
+    /**
+     * gets the frame of a sprite that is shown at a given time.
+     *
+     * @param sprite the sprite
+     * @param timeMillis the current time, used to pick the frame of animated sprites
+     * @return the index of the frame
+     */
+    public int frame(Sprite sprite, long timeMillis) {
+        int frames = sources[sprite.ordinal()].length;
+        if (frames == 1) {
+            return 0;
+        }
+        return (int) ((timeMillis / frameDelays[sprite.ordinal()]) % frames);
+    }
+
+    /**
+     * draws the first frame of a sprite.
+     *
+     * @param g the graphics to draw on
+     * @param sprite the sprite
+     * @param x the left edge of the sprite
+     * @param y the top edge of the sprite
+     */
+    public void draw(Graphics g, Sprite sprite, int x, int y) {
+        draw(g, sprite, 0, x, y);
+    }
+
+    /**
+     * draws a frame of a sprite by copying it from the atlas.
+     *
+     * @param g the graphics to draw on
+     * @param sprite the sprite
+     * @param frame the index of the frame, see frame
+     * @param x the left edge of the sprite
+     * @param y the top edge of the sprite
+     */
+    public void draw(Graphics g, Sprite sprite, int frame, int x, int y) {
+        int size = Math.max(1, sprite.size(fieldSize));
+        int sourceX = atlasX[sprite.ordinal()][frame];
+        int sourceY = atlasY[sprite.ordinal()][frame];
+        g.drawImage(atlas, x, y, x + size, y + size, sourceX, sourceY, sourceX + size, sourceY + size, null);
+    }
+
+    /**
+     * decodes every frame of a sprite and the delay between its frames.
+     * large frames are halved until they are close to MAX_SOURCE_SIZE, which makes every later resize cheaper.
+     */
+    private void load(Sprite sprite) {
+        String path = "images/" + sprite.file;
+        try (InputStream in = SpriteCache.class.getClassLoader().getResourceAsStream(path)) {
+            if (in == null) {
+                throw new IOException("missing image " + path);
+            }
+            ImageInputStream stream = ImageIO.createImageInputStream(in);
+            ImageReader reader = ImageIO.getImageReaders(stream).next();
+            try {
+                reader.setInput(stream);
+                int count = reader.getNumImages(true);
+                BufferedImage[] frames = new BufferedImage[count];
+                for (int i = 0; i < count; i++) {
+                    frames[i] = halve(reader.read(i), MAX_SOURCE_SIZE);
+                }
+                sources[sprite.ordinal()] = frames;
+                frameDelays[sprite.ordinal()] = count > 1 ? frameDelay(reader) : 0;
+            } finally {
+                reader.dispose();
+                stream.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * reads the delay of the first frame of an animated GIF.
+     *
+     * @return the delay in milliseconds, 100ms if the image does not specify one
+     */
+    private static int frameDelay(ImageReader reader) throws IOException {
+        IIOMetadataNode root = (IIOMetadataNode) reader.getImageMetadata(0).getAsTree("javax_imageio_gif_image_1.0");
+        IIOMetadataNode control = (IIOMetadataNode) root.getElementsByTagName("GraphicControlExtension").item(0);
+        int delay = control == null ? 0 : Integer.parseInt(control.getAttribute("delayTime")) * 10; // stored in 1/100s
+        return delay > 0 ? delay : 100;
+    }
+
+    /**
+     * scales an image to a square of the given size.
+     */
+    private static BufferedImage scale(BufferedImage source, int size) {
+        return draw(halve(source, size), size, size);
+    }
+
+    /**
+     * halves an image step by step while it stays at least the given size,
+     * which keeps bilinear filtering from skipping pixels when it is scaled down further.
+     */
+    private static BufferedImage halve(BufferedImage source, int size) {
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        while (width / 2 >= size && height / 2 >= size) {
+            width /= 2;
+            height /= 2;
+            current = draw(current, width, height);
+        }
+        return current;
+    }
+
+    private static BufferedImage draw(Image source, int width, int height) {
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = target.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.drawImage(source, 0, 0, width, height, null);
+        g.dispose();
+        return target;
+    }
+}
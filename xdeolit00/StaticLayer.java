@@ -0,0 +1,143 @@
+package xdeolit00;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * this class caches the walls and gates of the board as pre-rendered images.
+ * the board is split into square chunks of CHUNK_CELLS cells, and a chunk is only rendered once it
+ * becomes visible. chunks that have left the view are dropped again, so the memory used does not grow
+ * with the size of the maze but with the size of the view.
+ */
+class StaticLayer {
+    static final int CHUNK_CELLS = 32;
+    // chunks outside the view are only dropped once more than this many are cached
+    private static final int MAX_CACHED_CHUNKS = 64;
+
+    private final SpriteCache sprites;
+    private final Map<Long, BufferedImage> chunks = new HashMap<>();
+    private Board board;
+    private int fieldSize;
+
+    /**
+     * constructs an empty layer.
+     *
+     * @param sprites the sprites the walls and gates are drawn with
+     */
+    StaticLayer(SpriteCache sprites) {
+        this.sprites = sprites;
+    }
+
+    /**
+     * makes the layer show the given board at the given cell size, dropping all cached chunks if either changed.
+     * the sprites must already be scaled to the cell size.
+     *
+     * @param board the board to render
+     * @param fieldSize the size of a cell in pixels
+     */
+    public void update(Board board, int fieldSize) {
+        if (board != this.board || fieldSize != this.fieldSize) {
+            this.board = board;
+            this.fieldSize = fieldSize;
+            chunks.clear();
+        }
+    }
+
+    /**
+     * drops all cached chunks, e.g. after a new level was loaded.
+     */
+    public void invalidate() {
+        board = null;
+        chunks.clear();
+    }
+
+    /**
+     * drops the cached chunk containing a cell, so it is rendered again with the current tiles.
+     *
+     * @param row the row of the cell
+     * @param col the column of the cell
+     */
+    public void invalidateCell(int row, int col) {
+        chunks.remove(key(row / CHUNK_CELLS, col / CHUNK_CELLS));
+    }
+
+    /**
+     * draws the chunks that intersect an area of the board.
+     *
+     * @param g the graphics to draw on, in board coordinates
+     * @param area the area to draw in board coordinates, usually the clip
+     * @param configuration the graphics configuration to create chunk images for, or null for plain images
+     */
+    public void paint(Graphics g, Rectangle area, GraphicsConfiguration configuration) {
+        int chunkSize = CHUNK_CELLS * fieldSize;
+        int firstChunkRow = Math.max(0, area.y / chunkSize);
+        int lastChunkRow = Math.min((board.getRows() - 1) / CHUNK_CELLS, (area.y + area.height - 1) / chunkSize);
+        int firstChunkCol = Math.max(0, area.x / chunkSize);
+        int lastChunkCol = Math.min((board.getCols() - 1) / CHUNK_CELLS, (area.x + area.width - 1) / chunkSize);
+
+        for (int chunkRow = firstChunkRow; chunkRow <= lastChunkRow; chunkRow++) {
+            for (int chunkCol = firstChunkCol; chunkCol <= lastChunkCol; chunkCol++) {
+                BufferedImage chunk = chunks.get(key(chunkRow, chunkCol));
+                if (chunk == null) {
+                    chunk = render(chunkRow, chunkCol, configuration);
+                    chunks.put(key(chunkRow, chunkCol), chunk);
+                }
+                g.drawImage(chunk, chunkCol * chunkSize, chunkRow * chunkSize, null);
+            }
+        }
+
+        if (chunks.size() > MAX_CACHED_CHUNKS) {
+            // forget the chunks that are not in the area drawn just now
+            Iterator<Long> keys = chunks.keySet().iterator();
+            while (keys.hasNext()) {
+                long key = keys.next();
+                int chunkRow = (int) (key >> 32);
+                int chunkCol = (int) key;
+                if (chunkRow < firstChunkRow || chunkRow > lastChunkRow
+                        || chunkCol < firstChunkCol || chunkCol > lastChunkCol) {
+                    keys.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * renders the walls and gates of a single chunk onto a black background.
+     */
+    private BufferedImage render(int chunkRow, int chunkCol, GraphicsConfiguration configuration) {
+        int firstRow = chunkRow * CHUNK_CELLS;
+        int firstCol = chunkCol * CHUNK_CELLS;
+        int rows = Math.min(CHUNK_CELLS, board.getRows() - firstRow);
+        int cols = Math.min(CHUNK_CELLS, board.getCols() - firstCol);
+        int width = cols * fieldSize;
+        int height = rows * fieldSize;
+        BufferedImage chunk = configuration != null
+                ? configuration.createCompatibleImage(width, height, Transparency.OPAQUE)
+                : new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+
+        Graphics g = chunk.getGraphics();
+        g.setColor(Color.BLACK);
+        g.fillRect(0, 0, width, height);
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                switch (board.tile(firstRow + row, firstCol + col)) {
+                    case Board.WALL: // wall
+                        sprites.draw(g, SpriteCache.Sprite.WALL, col * fieldSize, row * fieldSize);
+                        break;
+                    case Board.GATE: // gate
+                        sprites.draw(g, SpriteCache.Sprite.GATE, col * fieldSize, row * fieldSize);
+                        break;
+                }
+            }
+        }
+        g.dispose();
+        return chunk;
+    }
+
+    private static long key(int chunkRow, int chunkCol) {
+        return ((long) chunkRow << 32) | (chunkCol & 0xFFFFFFFFL);
+    }
+}
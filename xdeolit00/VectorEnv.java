@@ -0,0 +1,404 @@
+package xdeolit00;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * this class steps a batch of games at once for training agents, in the style of a vectorised gym environment.
+ * an action is the ordinal of a Direction, NONE keeps Pacman's direction, and a step runs the game until
+ * Pacman's next move, so that every action has an effect.
+ *
+ * the observations of all games are written into a single direct ByteBuffer of shape
+ * [count][PLANES][rows][cols], one byte per cell and plane, which can be handed to native code without copying.
+ * Pacman's position, direction and key are also written to an int array of shape [count][FEATURES].
+ * the rewards and the ends of the episodes are returned in primitive arrays that are reused for every step.
+ * levels of different sizes are padded to the largest one with walls.
+ *
+ * a game that has ended is reset right away to the start of its level, and the observation of the step is
+ * then the first observation of the new episode, while the reward and done flags belong to the episode
+ * that ended. the games are split between a fixed set of worker threads. after the first episode of every
+ * game, stepping does not allocate: the observations are only updated where a cell changed or an actor moved,
+ * and resetting a game copies the level template into the arrays the game already owns.
+ */
+class VectorEnv implements AutoCloseable {
+    // the planes of an observation
+    static final int WALL = 0;
+    static final int GATE = 1;
+    static final int KEY = 2;
+    static final int PELLET = 3;
+    static final int PACMAN = 4;
+    static final int GHOST = 5;
+    static final int PLANES = 6;
+
+    // the features of an observation: Pacman's row, column, direction ordinal and whether he has the key
+    static final int FEATURES = 4;
+
+    // rewards for what happened during a step
+    static final float PELLET_REWARD = 1;
+    static final float KEY_REWARD = 10;
+    static final float WIN_REWARD = 100;
+    static final float LOSS_REWARD = -100;
+    static final float STEP_REWARD = -0.01f;
+
+    static final long DEFAULT_MAX_TICKS = 100_000;
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final Env[] envs;
+    private final int rows, cols;
+    private final ByteBuffer observations;
+    private final int[] features;
+    private final float[] rewards;
+    private final boolean[] dones;
+    private final boolean[] truncated;
+    private long maxTicks = DEFAULT_MAX_TICKS;
+
+    // the workers step the games from bounds[i + 1] to bounds[i + 2], the calling thread steps the first slice
+    private final Thread[] workers;
+    private final int[] bounds;
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile long generation;
+    private volatile boolean closed;
+    private volatile Thread caller;
+    private volatile RuntimeException failure;
+    private int[] actions;
+
+    /**
+     * constructs a batch of games stepped on all cores.
+     *
+     * @param levelIds the levels to play, game i plays level i modulo their number
+     * @param count the number of games
+     * @throws IOException if a level cannot be loaded
+     */
+    VectorEnv(List<String> levelIds, int count) throws IOException {
+        this(levelIds, count, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * constructs a batch of games. every game is reset and its observation written.
+     *
+     * @param levelIds the levels to play, game i plays level i modulo their number
+     * @param count the number of games
+     * @param threads the number of threads stepping the games, including the calling thread
+     * @throws IOException if a level cannot be loaded
+     */
+    VectorEnv(List<String> levelIds, int count, int threads) throws IOException {
+        if (levelIds.isEmpty() || count < 1) {
+            throw new IllegalArgumentException("at least one level and one game are needed");
+        }
+        envs = new Env[count];
+        int maxRows = 0, maxCols = 0;
+        for (int i = 0; i < count; i++) {
+            envs[i] = new Env(i, LevelLoader.load(levelIds.get(i % levelIds.size())));
+            maxRows = Math.max(maxRows, envs[i].level.getRows());
+            maxCols = Math.max(maxCols, envs[i].level.getCols());
+        }
+        rows = maxRows;
+        cols = maxCols;
+        observations = ByteBuffer.allocateDirect(count * PLANES * rows * cols).order(ByteOrder.nativeOrder());
+        features = new int[count * FEATURES];
+        rewards = new float[count];
+        dones = new boolean[count];
+        truncated = new boolean[count];
+        reset();
+
+        threads = Math.max(1, Math.min(threads, count));
+        bounds = new int[threads + 1];
+        for (int i = 0; i <= threads; i++) {
+            bounds[i] = (int) ((long) count * i / threads);
+        }
+        workers = new Thread[threads - 1];
+        for (int i = 0; i < workers.length; i++) {
+            int from = bounds[i + 1], to = bounds[i + 2];
+            workers[i] = new Thread(() -> work(from, to), "env-worker-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    public int getCount() {
+        return envs.length;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * sets after how many ticks an episode is cut off.
+     *
+     * @param ticks the longest episode in ticks
+     */
+    public void setMaxTicks(long ticks) {
+        maxTicks = ticks;
+    }
+
+    /**
+     * gets the observations of all games, updated in place by every step.
+     *
+     * @return the buffer of shape [count][PLANES][rows][cols], 1 where a plane applies to a cell, 0 elsewhere
+     */
+    public ByteBuffer observations() {
+        return observations;
+    }
+
+    /**
+     * gets Pacman's row, column, direction ordinal and key (1 or 0) in every game, updated in place by every step.
+     *
+     * @return the array of shape [count][FEATURES]
+     */
+    public int[] features() {
+        return features;
+    }
+
+    /**
+     * gets the rewards of the last step.
+     *
+     * @return the reward of every game, reused by the next step
+     */
+    public float[] rewards() {
+        return rewards;
+    }
+
+    /**
+     * gets which episodes ended in the last step, either because the game was won or lost or because it was cut off.
+     *
+     * @return the flag of every game, reused by the next step
+     */
+    public boolean[] dones() {
+        return dones;
+    }
+
+    /**
+     * gets which of the episodes that ended in the last step were cut off after the maximum number of ticks.
+     *
+     * @return the flag of every game, reused by the next step
+     */
+    public boolean[] truncated() {
+        return truncated;
+    }
+
+    /**
+     * starts every game over and writes the first observations.
+     */
+    public void reset() {
+        for (Env env : envs) {
+            env.reset();
+        }
+    }
+
+    /**
+     * runs one step of every game.
+     *
+     * @param actions the Direction ordinal to steer Pacman in, for every game
+     */
+    public void step(int[] actions) {
+        if (actions.length != envs.length) {
+            throw new IllegalArgumentException("expected " + envs.length + " actions, got " + actions.length);
+        }
+        this.actions = actions;
+        failure = null;
+        if (workers.length > 0) {
+            caller = Thread.currentThread();
+            pending.set(workers.length);
+            generation++; // publishes the actions to the workers
+            for (Thread worker : workers) {
+                LockSupport.unpark(worker);
+            }
+        }
+        stepRange(bounds[0], bounds[1]);
+        while (pending.get() > 0) {
+            LockSupport.park(this);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * stops the worker threads.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Thread worker : workers) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    /**
+     * the body of a worker thread: step its games whenever step is called.
+     */
+    private void work(int from, int to) {
+        long seen = 0;
+        while (!closed) {
+            if (generation == seen) {
+                LockSupport.park(this);
+                continue;
+            }
+            seen = generation;
+            try {
+                stepRange(from, to);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            if (pending.decrementAndGet() == 0) {
+                LockSupport.unpark(caller);
+            }
+        }
+    }
+
+    private void stepRange(int from, int to) {
+        for (int i = from; i < to; i++) {
+            int action = actions[i];
+            envs[i].step(action >= 0 && action < DIRECTIONS.length ? DIRECTIONS[action] : Direction.NONE);
+        }
+    }
+
+    /**
+     * a single game of the batch with the part of the observations it writes to.
+     */
+    private final class Env {
+        private final int index;
+        private final Level level;
+        private final GameState state;
+        private final GameEngine engine;
+        private final int[] ghostCells; // the cells marked in the ghost plane
+        private int pacmanCell;
+
+        Env(int index, Level level) {
+            this.index = index;
+            this.level = level;
+            this.state = new GameState(level);
+            this.engine = new GameEngine(state);
+            this.ghostCells = new int[level.getGhostCount()];
+            state.getBoard().trackChanges();
+        }
+
+        /**
+         * gets the first byte of the observation of this game.
+         */
+        private int base() {
+            return index * PLANES * rows * cols;
+        }
+
+        /**
+         * runs the game until Pacman's next move and updates the reward, done flags and observation.
+         */
+        void step(Direction action) {
+            int score = state.getScore();
+            boolean key = state.hasKey();
+            int interval = engine.getPacmanInterval();
+            engine.tick(action);
+            while (state.getStatus() == GameState.Status.PLAYING && state.getTick() % interval != 0) {
+                engine.tick(Direction.NONE);
+            }
+
+            float reward = STEP_REWARD + (state.getScore() - score) * PELLET_REWARD;
+            if (state.hasKey() && !key) {
+                reward += KEY_REWARD;
+            }
+            boolean cutOff = state.getStatus() == GameState.Status.PLAYING && state.getTick() >= maxTicks;
+            switch (state.getStatus()) {
+                case WON: reward += WIN_REWARD; break;
+                case LOST: reward += LOSS_REWARD; break;
+            }
+            rewards[index] = reward;
+            dones[index] = cutOff || state.getStatus() != GameState.Status.PLAYING;
+            truncated[index] = cutOff;
+            if (dones[index]) {
+                reset();
+            } else {
+                update();
+            }
+        }
+
+        /**
+         * starts the game over and writes its whole observation.
+         */
+        void reset() {
+            state.reset(level);
+            state.getBoard().clearChanges();
+            Board board = state.getBoard();
+            int base = base();
+            for (int row = 0; row < rows; row++) {
+                for (int col = 0; col < cols; col++) {
+                    boolean inside = row < board.getRows() && col < board.getCols();
+                    byte tile = inside ? board.tile(row, col) : Board.WALL;
+                    put(base, WALL, row, col, tile == Board.WALL);
+                    put(base, GATE, row, col, tile == Board.GATE);
+                    put(base, KEY, row, col, tile == Board.KEY);
+                    put(base, PELLET, row, col, inside && board.hasPellet(row, col));
+                    put(base, PACMAN, row, col, false);
+                    put(base, GHOST, row, col, false);
+                }
+            }
+            pacmanCell = state.getPlayerRow() * cols + state.getPlayerCol();
+            observations.put(base + PACMAN * rows * cols + pacmanCell, (byte) 1);
+            List<Ghost> ghosts = state.ghosts();
+            for (int i = 0; i < ghostCells.length; i++) {
+                ghostCells[i] = ghosts.get(i).getRow() * cols + ghosts.get(i).getCol();
+                observations.put(base + GHOST * rows * cols + ghostCells[i], (byte) 1);
+            }
+            writeFeatures();
+        }
+
+        /**
+         * writes the cells that changed and the actors that moved during a step into the observation.
+         */
+        private void update() {
+            Board board = state.getBoard();
+            int base = base();
+            int plane = rows * cols;
+            for (int i = 0; i < board.getChangeCount(); i++) {
+                int cell = board.getChangedCell(i);
+                int row = cell / board.getCols();
+                int col = cell % board.getCols();
+                put(base, KEY, row, col, board.tile(row, col) == Board.KEY);
+                put(base, PELLET, row, col, board.hasPellet(row, col));
+            }
+            board.clearChanges();
+
+            int cell = state.getPlayerRow() * cols + state.getPlayerCol();
+            if (cell != pacmanCell) {
+                observations.put(base + PACMAN * plane + pacmanCell, (byte) 0);
+                observations.put(base + PACMAN * plane + cell, (byte) 1);
+                pacmanCell = cell;
+            }
+
+            // clear the cells the ghosts left before marking the ones they entered, one may have entered another's
+            List<Ghost> ghosts = state.ghosts();
+            for (int i = 0; i < ghostCells.length; i++) {
+                Ghost ghost = ghosts.get(i);
+                if (ghostCells[i] != ghost.getRow() * cols + ghost.getCol()) {
+                    observations.put(base + GHOST * plane + ghostCells[i], (byte) 0);
+                }
+            }
+            for (int i = 0; i < ghostCells.length; i++) {
+                Ghost ghost = ghosts.get(i);
+                ghostCells[i] = ghost.getRow() * cols + ghost.getCol();
+                observations.put(base + GHOST * plane + ghostCells[i], (byte) 1);
+            }
+            writeFeatures();
+        }
+
+        private void writeFeatures() {
+            int offset = index * FEATURES;
+            features[offset] = state.getPlayerRow();
+            features[offset + 1] = state.getPlayerCol();
+            features[offset + 2] = state.getDirection().ordinal();
+            features[offset + 3] = state.hasKey() ? 1 : 0;
+        }
+
+        private void put(int base, int plane, int row, int col, boolean value) {
+            observations.put(base + (plane * rows + row) * cols + col, (byte) (value ? 1 : 0));
+        }
+    }
+}